@@ -0,0 +1,173 @@
+package lhg.drawerlayout;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Company:
+ * Project:
+ * Author: liuhaoge
+ * Note:  关闭trace时手势处理不回调也不分配trace的缓冲区, 打开时按顺序记录;
+ *        不管有没有trace, 拖动中的MOVE都不分配对象
+ */
+@RunWith(AndroidJUnit4.class)
+public class ViewScrollHelperTraceTest {
+
+    private FrameLayout mParent;
+    private ViewScrollHelper mHelper;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mParent = new FrameLayout(context);
+        mParent.addView(new View(context), new FrameLayout.LayoutParams(1000, 1000));
+        mParent.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.EXACTLY));
+        mParent.layout(0, 0, 1000, 1000);
+        mHelper = ViewScrollHelper.create(mParent, new ViewScrollHelper.Callback() {
+            @Override
+            public int getScrollDirection() {
+                return ViewScrollHelper.DIRECTION_HORIZONTAL;
+            }
+
+            @Override
+            public boolean onDragBegin(View child, int x, int y, int dx, int dy, int edge) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(int x, int y, int dx, int dy) {
+                return true;
+            }
+
+            @Override
+            public void onDragEnd(int xvel, int yvel) {
+            }
+        });
+    }
+
+    @Test
+    public void traceOff_noSinkCallsAndNoBuffer() {
+        CountingTrace counting = new CountingTrace();
+        mHelper.setGestureTrace(counting);
+        mHelper.setGestureTrace(null);
+
+        drag();
+
+        assertEquals(0, counting.calls);
+        //关闭时不会自己创建记录用的缓冲区
+        assertNull(mHelper.getGestureTrace());
+    }
+
+    @Test
+    public void traceOn_recordsGestureInOrder() {
+        GestureTrace.RingBuffer buffer = new GestureTrace.RingBuffer(16);
+        mHelper.setGestureTrace(buffer);
+
+        drag();
+
+        assertSame(buffer, mHelper.getGestureTrace());
+        StringBuilder sb = new StringBuilder();
+        buffer.dump(sb);
+        String dump = sb.toString();
+        int down = dump.indexOf("DOWN");
+        int slop = dump.indexOf("SLOP");
+        int capture = dump.indexOf("CAPTURE");
+        int release = dump.indexOf("RELEASE");
+        assertTrue(dump, down >= 0 && down < slop && slop < capture && capture < release);
+    }
+
+    @Test
+    public void traceOff_movesDoNotAllocate() {
+        mHelper.setGestureTrace(null);
+        assertEquals(0, countMoveAllocations());
+    }
+
+    @Test
+    public void traceOn_movesDoNotAllocate() {
+        mHelper.setGestureTrace(new GestureTrace.RingBuffer(16));
+        assertEquals(0, countMoveAllocations());
+    }
+
+    /**
+     * 先拖起来并预热, 再统计N个MOVE期间当前线程分配的对象个数.
+     * MotionEvent都在统计之前obtain好
+     */
+    private int countMoveAllocations() {
+        final int warmUp = 64;
+        final int count = 256;
+        final long downTime = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, 100, 500, 0);
+        MotionEvent[] moves = new MotionEvent[warmUp + count];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = MotionEvent.obtain(downTime, downTime + 8 * (i + 1), MotionEvent.ACTION_MOVE, 150 + i, 500, 0);
+        }
+        MotionEvent up = MotionEvent.obtain(downTime, downTime + 8 * (moves.length + 1), MotionEvent.ACTION_UP, 150 + moves.length, 500, 0);
+        try {
+            mHelper.interceptTouchEvent(down);
+            assertTrue(mHelper.interceptTouchEvent(moves[0]));
+            for (int i = 0; i < warmUp; i++) {
+                mHelper.onTouchEvent(moves[i]);
+            }
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = warmUp; i < moves.length; i++) {
+                mHelper.onTouchEvent(moves[i]);
+            }
+            Debug.stopAllocCounting();
+            final int allocations = Debug.getThreadAllocCount();
+            mHelper.onTouchEvent(up);
+            return allocations;
+        } finally {
+            Debug.stopAllocCounting();
+            down.recycle();
+            for (MotionEvent move : moves) {
+                move.recycle();
+            }
+            up.recycle();
+        }
+    }
+
+    private void drag() {
+        final long downTime = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, 500, 500, 0);
+        MotionEvent move = MotionEvent.obtain(downTime, downTime + 16, MotionEvent.ACTION_MOVE, 700, 500, 0);
+        MotionEvent up = MotionEvent.obtain(downTime, downTime + 32, MotionEvent.ACTION_UP, 700, 500, 0);
+        try {
+            mHelper.interceptTouchEvent(down);
+            if (mHelper.interceptTouchEvent(move)) {
+                mHelper.onTouchEvent(move);
+            }
+            mHelper.onTouchEvent(up);
+        } finally {
+            down.recycle();
+            move.recycle();
+            up.recycle();
+        }
+    }
+
+    private static class CountingTrace implements GestureTrace {
+        int calls;
+
+        @Override
+        public void onEvent(int event, long eventTime, int arg0, int arg1) {
+            calls++;
+        }
+    }
+}
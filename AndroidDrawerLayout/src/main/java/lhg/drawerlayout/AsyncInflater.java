@@ -0,0 +1,101 @@
+package lhg.drawerlayout;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Company:
+ * Project:
+ * Author: liuhaoge
+ * Note:  在后台线程inflate抽屉和head的内容, 在主线程回调, 后台inflate失败时在主线程重新inflate
+ */
+final class AsyncInflater {
+    private static final String TAG = "AsyncInflater";
+
+    interface Callback {
+        //主线程, view还没有添加到parent
+        void onInflated(@NonNull View view, @LayoutRes int resid, @NonNull ViewGroup parent);
+    }
+
+    private static ExecutorService sExecutor;
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "DrawerLayout-inflater");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sExecutor;
+    }
+
+    private final LayoutInflater mInflater;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    AsyncInflater(@NonNull Context context) {
+        mInflater = LayoutInflater.from(context).cloneInContext(context);
+    }
+
+    /**
+     * @param parent 只用来生成LayoutParams, 不会在后台线程修改
+     */
+    Request inflate(@LayoutRes int resid, @NonNull ViewGroup parent, @NonNull Callback callback) {
+        Request request = new Request(resid, parent, callback);
+        executor().execute(request);
+        return request;
+    }
+
+    final class Request implements Runnable {
+        final int resid;
+        final ViewGroup parent;
+        final Callback callback;
+        View view;
+        volatile boolean cancelled;
+
+        Request(int resid, ViewGroup parent, Callback callback) {
+            this.resid = resid;
+            this.parent = parent;
+            this.callback = callback;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                view = mInflater.inflate(resid, parent, false);
+            } catch (RuntimeException e) {
+                //有些view只能在主线程创建, 回到主线程再inflate
+                Log.w(TAG, "Failed to inflate resource in the background! Retrying on the UI thread", e);
+            }
+            mHandler.post(this::deliver);
+        }
+
+        private void deliver() {
+            if (cancelled) {
+                return;
+            }
+            if (view == null) {
+                view = mInflater.inflate(resid, parent, false);
+            }
+            callback.onInflated(view, resid, parent);
+        }
+    }
+}
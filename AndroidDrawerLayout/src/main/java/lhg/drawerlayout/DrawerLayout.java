@@ -1,48 +1,106 @@
 package lhg.drawerlayout;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.Gravity;
+import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.OverScroller;
+import android.widget.ImageView;
 
 import androidx.annotation.ColorInt;
+import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.core.content.ContextCompat;
 import androidx.core.view.GravityCompat;
+import androidx.core.view.NestedScrollingChild3;
+import androidx.core.view.NestedScrollingChildHelper;
+import androidx.core.view.NestedScrollingParent3;
+import androidx.core.view.NestedScrollingParentHelper;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * DrawerLayout: has no padding
  */
-public class DrawerLayout extends ViewGroup {
+public class DrawerLayout extends ViewGroup implements NestedScrollingParent3, NestedScrollingChild3 {
     private static final String TAG = "DrawerLayout";
     private static final int DEFAULT_SCRIM_COLOR = 0x99000000;
 
     private static int MinVelSettle = 1000;//松手不归位的最小速度
     private int mScrimColor = DEFAULT_SCRIM_COLOR;
     private Paint mScrimPaint = new Paint();
+    private int mScrimPaintColor;//mScrimPaint当前的颜色, 只有alpha变化时才重新设置
 
     private DrawerListener mDrawerListener;
+    private static final DrawerListener[] EMPTY_LISTENERS = new DrawerListener[0];
+    //写时复制, 分发时直接遍历数组, 不加锁也不复制
+    private final AtomicReference<DrawerListener[]> mDrawerListeners = new AtomicReference<>(EMPTY_LISTENERS);
+    private boolean mSlidePending;
+    private final Choreographer.FrameCallback mSlideFrameCallback = frameTimeNanos -> dispatchDrawerSlide();
 
     private final DrawerDeledges mDrawerDeledges = new DrawerDeledges();
     private ViewScrollHelper mScrollHelper;
     private DrawerLayoutScrollCallback mScrollCallback;
-    private OverScroller mScroller;
-    private StateChangedRunnable stateChangedRunnable = new StateChangedRunnable();
+    private DrawerDeledge mSettlingDeledge;//最近一次开始归位的抽屉
+    private final StateChangeQueue mStateChangeQueue = new StateChangeQueue(this, (drawerView, gravity, open) -> postStateChanged(drawerView, open, gravity));
     private final CheckClickHelper checkClickHelper = new CheckClickHelper();
+    private final NestedScrollingParentHelper mNestedScrollingParentHelper = new NestedScrollingParentHelper(this);
+    private final int[] mNestedScrollConsumed = new int[2];
+    private final NestedScrollingChildHelper mNestedScrollingChildHelper;//抽屉没有用掉的嵌套滚动继续交给外层
+    private final int[] mNestedParentConsumed = new int[2];
+    private View mNestedTarget;
+    private DrawerDeledge mNestedDeledge;//嵌套滚动正在拖动的抽屉
+    private boolean mNestedDeledgeSettled;
+    private boolean mTranslationDrag;//拖动和归位时只修改translation, 结束后再提交到layout
+    private boolean mPrewarmOnIdle;
+    private boolean mPrewarmScheduled;
+    private final PrewarmIdleHandler mPrewarmIdleHandler = new PrewarmIdleHandler();
+    private boolean mPrewarming;
+    private AsyncInflater mAsyncInflater;
+    private boolean mTrimClosedDrawers;
+    private long mTrimClosedDelay = 30_000;//关闭多久之后释放抽屉的内容, <=0 只在内存不足时释放
+    private float mTrimSnapshotScale = 0;//>0 释放时保留的低分辨率截图的缩放比例
+    private boolean mTrimCallbacksRegistered;
+    private final TrimMemoryCallbacks mTrimMemoryCallbacks = new TrimMemoryCallbacks();
+    private final Runnable mTrimRunnable = () -> trimClosedDrawers(false);
+    private boolean mFreezeClosedDrawers;
+    private int mRestoredOpenGravity = Gravity.NO_GRAVITY;//恢复的打开状态, 在下一次onLayout中直接摆到最终位置
+    private boolean mJumpPending;//下一次onLayout直接把抽屉摆到最终位置
+    private boolean mSettleStepPosted;
+    private final Runnable mSettleStepRunnable = () -> {
+        mSettleStepPosted = false;
+        stepSettle();
+    };
 
     public DrawerLayout(Context context) {
         this(context, null);
@@ -63,9 +121,10 @@ public class DrawerLayout extends ViewGroup {
         }
 
         initApplyInsets(context);
+        mNestedScrollingChildHelper = new NestedScrollingChildHelper(this);
+        setNestedScrollingEnabled(true);
 
         mScrollHelper = new DrawerLayoutScrollHerlper(getContext(), this, mScrollCallback = new DrawerLayoutScrollCallback(), mDrawerDeledges);
-        mScroller = mScrollHelper.getScroller();
         mDrawerDeledges.init(this, mScrollHelper);
         initCheckClickHelper(mScrollHelper.mTouchSlop);
     }
@@ -120,6 +179,460 @@ public class DrawerLayout extends ViewGroup {
         this.mDrawerListener = drawerListener;
     }
 
+    public void addDrawerListener(@NonNull DrawerListener listener) {
+        while (true) {
+            DrawerListener[] old = mDrawerListeners.get();
+            DrawerListener[] listeners = new DrawerListener[old.length + 1];
+            System.arraycopy(old, 0, listeners, 0, old.length);
+            listeners[old.length] = listener;
+            if (mDrawerListeners.compareAndSet(old, listeners)) {
+                return;
+            }
+        }
+    }
+
+    public void removeDrawerListener(@NonNull DrawerListener listener) {
+        while (true) {
+            DrawerListener[] old = mDrawerListeners.get();
+            int index = -1;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            DrawerListener[] listeners = old.length == 1 ? EMPTY_LISTENERS : new DrawerListener[old.length - 1];
+            System.arraycopy(old, 0, listeners, 0, index);
+            System.arraycopy(old, index + 1, listeners, index, old.length - index - 1);
+            if (mDrawerListeners.compareAndSet(old, listeners)) {
+                return;
+            }
+        }
+    }
+
+    private boolean hasDrawerListener() {
+        return mDrawerListener != null || mDrawerListeners.get().length > 0;
+    }
+
+    //抽屉移动了, 下一帧回调一次onDrawerSlide
+    void scheduleDrawerSlide(DrawerDeledge d) {
+        if (!hasDrawerListener()) {
+            return;
+        }
+        d.slidePending = true;
+        if (!mSlidePending) {
+            mSlidePending = true;
+            Choreographer.getInstance().postFrameCallback(mSlideFrameCallback);
+        }
+    }
+
+    private void dispatchDrawerSlide() {
+        mSlidePending = false;
+        for (DrawerDeledge d : mDrawerDeledges.all) {
+            if (!d.slidePending) {
+                continue;
+            }
+            d.slidePending = false;
+            if (d.drawerView == null) {
+                continue;
+            }
+            final int size = d.drawerSize();
+            final float fraction = size <= 0 ? 0 : Math.max(0f, Math.min(1f, d.getDrawerVisibleSize() * 1f / size));
+            if (fraction == d.slideFraction) {
+                continue;
+            }
+            d.slideFraction = fraction;
+            if (mDrawerListener != null) {
+                mDrawerListener.onDrawerSlide(this, d.drawerView, d.gravity, fraction);
+            }
+            for (DrawerListener listener : mDrawerListeners.get()) {
+                listener.onDrawerSlide(this, d.drawerView, d.gravity, fraction);
+            }
+        }
+    }
+
+    void dispatchDrawerFrozen(View drawerView, int gravity, boolean frozen) {
+        if (mDrawerListener != null) {
+            if (frozen) {
+                mDrawerListener.onDrawerFrozen(this, drawerView, gravity);
+            } else {
+                mDrawerListener.onDrawerThawed(this, drawerView, gravity);
+            }
+        }
+        for (DrawerListener listener : mDrawerListeners.get()) {
+            if (frozen) {
+                listener.onDrawerFrozen(this, drawerView, gravity);
+            } else {
+                listener.onDrawerThawed(this, drawerView, gravity);
+            }
+        }
+    }
+
+    public void setGestureTrace(@Nullable GestureTrace trace) {
+        mScrollHelper.setGestureTrace(trace);
+    }
+
+    /**
+     * 打开后同一帧内的多个move事件只移动一次view
+     */
+    public void setCoalesceDragPerFrame(boolean coalesce) {
+        mScrollHelper.setCoalesceScrollPerFrame(coalesce);
+    }
+
+    /**
+     * 打开后使用MotionEvent的历史采样点判断拖动开始的位置
+     */
+    public void setProcessHistoricalSamples(boolean process) {
+        mScrollHelper.setProcessHistoricalSamples(process);
+    }
+
+    /**
+     * @param engine 松手之后的归位动画, null 使用默认的OverScroller
+     */
+    public void setSettleEngine(@Nullable ViewScrollHelper.SettleEngine engine) {
+        mScrollHelper.setSettleEngine(engine);
+    }
+
+    /**
+     * 打开后拖动和归位过程中只修改抽屉和内容的translationX/Y, 不改变layout的位置,
+     * 归位结束后才把translation提交为真正的位置
+     */
+    public void setTranslationDragEnabled(boolean enabled) {
+        if (mTranslationDrag == enabled) {
+            return;
+        }
+        if (!enabled) {
+            commitTranslation();
+        }
+        mTranslationDrag = enabled;
+    }
+
+    public boolean isTranslationDragEnabled() {
+        return mTranslationDrag;
+    }
+
+    private void commitTranslation() {
+        for (DrawerDeledge d : mDrawerDeledges.all) {
+            commitTranslation(d.drawerView);
+            commitTranslation(d.bodyView);
+        }
+    }
+
+    private static void commitTranslation(View view) {
+        if (view == null) {
+            return;
+        }
+        int tx = Math.round(view.getTranslationX());
+        int ty = Math.round(view.getTranslationY());
+        if (tx != 0 || ty != 0) {
+            view.setTranslationX(0);
+            view.setTranslationY(0);
+            view.offsetLeftAndRight(tx);
+            view.offsetTopAndBottom(ty);
+        }
+    }
+
+    public void setScrimColor(@ColorInt int color) {
+        mScrimColor = color;
+        invalidate();
+    }
+
+    @ColorInt
+    public int getScrimColor() {
+        return mScrimColor;
+    }
+
+    /**
+     * 打开后在主线程空闲的时候逐个预先绘制关闭的抽屉, 第一次打开时不用再创建文字布局和解码图片,
+     * 有触摸事件时停止, 手指抬起后继续
+     */
+    public void setPrewarmDrawersOnIdle(boolean prewarm) {
+        mPrewarmOnIdle = prewarm;
+        if (prewarm) {
+            schedulePrewarm();
+        } else {
+            cancelPrewarm();
+        }
+    }
+
+    public boolean isPrewarmDrawersOnIdle() {
+        return mPrewarmOnIdle;
+    }
+
+    private void schedulePrewarm() {
+        if (mPrewarmOnIdle && !mPrewarmScheduled && ViewCompat.isAttachedToWindow(this)
+                && Looper.myLooper() == Looper.getMainLooper()) {
+            mPrewarmScheduled = true;
+            Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+        }
+    }
+
+    private void cancelPrewarm() {
+        if (mPrewarmScheduled) {
+            mPrewarmScheduled = false;
+            Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        }
+    }
+
+    private class PrewarmIdleHandler implements MessageQueue.IdleHandler {
+        //每次空闲只预热一个抽屉, 返回false表示已经没有需要预热的抽屉
+        @Override
+        public boolean queueIdle() {
+            if (!mPrewarmScheduled) {
+                return false;
+            }
+            for (DrawerDeledge d : mDrawerDeledges.all) {
+                if (d.shouldPrewarm()) {
+                    prewarm(d);
+                    return true;
+                }
+            }
+            mPrewarmScheduled = false;
+            return false;
+        }
+
+        private void prewarm(DrawerDeledge d) {
+            final View drawerView = d.drawerView;
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            mPrewarming = true;
+            try {
+                if (drawerView.isLayoutRequested() || drawerView.getWidth() <= 0 || drawerView.getHeight() <= 0) {
+                    //还没有布局的抽屉先在关闭的位置measure和layout, 否则第一次打开时还要做
+                    measureDrawer(drawerView,
+                            MeasureSpec.makeMeasureSpec(getMeasuredWidth(), MeasureSpec.EXACTLY),
+                            MeasureSpec.makeMeasureSpec(getMeasuredHeight(), MeasureSpec.EXACTLY));
+                    d.layoutDrawerView();
+                }
+                final int width = drawerView.getWidth();
+                final int height = drawerView.getHeight();
+                if (width > 0 && height > 0) {
+                    if (Build.VERSION.SDK_INT >= 29 && isHardwareAccelerated()) {
+                        recordRenderNode(drawerView, width, height);
+                    } else {
+                        //软件绘制只能触发文字布局/图片解码等第一次绘制才做的工作
+                        Picture picture = new Picture();
+                        drawerView.draw(picture.beginRecording(width, height));
+                        picture.endRecording();
+                    }
+                    if (drawerView.getLayerType() == LAYER_TYPE_HARDWARE) {
+                        drawerView.buildLayer();
+                    }
+                }
+            } finally {
+                mPrewarming = false;
+            }
+            lp.prewarmed = true;
+        }
+
+        //画到硬件canvas里, 子view的RenderNode会生成display list, 打开时直接复用
+        @RequiresApi(29)
+        private void recordRenderNode(View drawerView, int width, int height) {
+            RenderNode node = new RenderNode("DrawerPrewarm");
+            node.setPosition(0, 0, width, height);
+            RecordingCanvas canvas = node.beginRecording();
+            try {
+                drawerView.draw(canvas);
+            } finally {
+                node.endRecording();
+            }
+            node.discardDisplayList();
+        }
+    }
+
+    //抽屉的内容变了, 之前的预热没用了
+    private void invalidatePrewarm(View child) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        if (lp.prewarmed && !mPrewarming && isDrawerView(child)) {
+            lp.prewarmed = false;
+            schedulePrewarm();
+        }
+    }
+
+    /**
+     * 打开后懒加载(layout_dlt_lazyLayout或者inflateDrawerAsync)的抽屉关闭一段时间或者内存不足时释放内容,
+     * 保存view的状态, 下次拖动或者open的时候重新inflate并恢复
+     */
+    public void setTrimClosedDrawers(boolean trim) {
+        mTrimClosedDrawers = trim;
+        if (trim) {
+            registerTrimCallbacks();
+            scheduleTrim();
+        } else {
+            unregisterTrimCallbacks();
+            removeCallbacks(mTrimRunnable);
+        }
+    }
+
+    public boolean isTrimClosedDrawers() {
+        return mTrimClosedDrawers;
+    }
+
+    /**
+     * @param delayMillis 抽屉关闭多久之后释放内容, <=0 只在内存不足时释放
+     */
+    public void setTrimClosedDrawersDelay(long delayMillis) {
+        mTrimClosedDelay = delayMillis;
+        removeCallbacks(mTrimRunnable);
+        scheduleTrim();
+    }
+
+    /**
+     * @param scale >0 释放时把抽屉画成这个比例的截图作为占位的背景, 0 不保留截图
+     */
+    public void setTrimSnapshotScale(float scale) {
+        mTrimSnapshotScale = scale;
+    }
+
+    private void registerTrimCallbacks() {
+        if (mTrimClosedDrawers && !mTrimCallbacksRegistered && ViewCompat.isAttachedToWindow(this)) {
+            mTrimCallbacksRegistered = true;
+            getContext().getApplicationContext().registerComponentCallbacks(mTrimMemoryCallbacks);
+        }
+    }
+
+    private void unregisterTrimCallbacks() {
+        if (mTrimCallbacksRegistered) {
+            mTrimCallbacksRegistered = false;
+            getContext().getApplicationContext().unregisterComponentCallbacks(mTrimMemoryCallbacks);
+        }
+    }
+
+    private void scheduleTrim() {
+        if (mTrimClosedDrawers && mTrimClosedDelay > 0 && ViewCompat.isAttachedToWindow(this)) {
+            trimClosedDrawers(false);
+        }
+    }
+
+    /**
+     * @param all true 内存不足, 释放所有可以释放的抽屉
+     */
+    private void trimClosedDrawers(boolean all) {
+        removeCallbacks(mTrimRunnable);
+        final long now = SystemClock.uptimeMillis();
+        long next = Long.MAX_VALUE;
+        for (DrawerDeledge d : mDrawerDeledges.all) {
+            if (!d.canTrim()) {
+                continue;
+            }
+            final long trimTime = ((LayoutParams) d.drawerView.getLayoutParams()).closedTime + mTrimClosedDelay;
+            if (all || (mTrimClosedDelay > 0 && trimTime <= now)) {
+                d.trimContent(all ? 0 : mTrimSnapshotScale);
+            } else {
+                next = Math.min(next, trimTime);
+            }
+        }
+        if (mTrimClosedDelay > 0 && next != Long.MAX_VALUE) {
+            postDelayed(mTrimRunnable, next - now);
+        }
+    }
+
+    private class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                trimClosedDrawers(true);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimClosedDrawers(true);
+        }
+    }
+
+    /**
+     * 打开后完全关闭的抽屉进入冻结状态: 停止里面的Animatable动画, 不再向上传递重绘和重新布局的请求,
+     * 开始拖动或者打开时解冻
+     */
+    public void setFreezeClosedDrawers(boolean freeze) {
+        if (mFreezeClosedDrawers == freeze) {
+            return;
+        }
+        mFreezeClosedDrawers = freeze;
+        for (DrawerDeledge d : mDrawerDeledges.all) {
+            if (freeze) {
+                d.freezeIfClosed();
+            } else {
+                d.thaw();
+            }
+        }
+    }
+
+    public boolean isFreezeClosedDrawers() {
+        return mFreezeClosedDrawers;
+    }
+
+    @Override
+    public void onDescendantInvalidated(@NonNull View child, @NonNull View target) {
+        invalidatePrewarm(child);
+        if (((LayoutParams) child.getLayoutParams()).frozen) {
+            //冻结的抽屉不需要重绘, 解冻时再invalidate
+            return;
+        }
+        super.onDescendantInvalidated(child, target);
+    }
+
+    @Override
+    public void requestLayout() {
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child.isLayoutRequested()) {
+                invalidatePrewarm(child);
+            }
+        }
+        if (mFreezeClosedDrawers && !isLayoutRequested()) {
+            //只推迟从冻结的抽屉里面传上来的请求: 冻结的child的标记是这次传递刚刚设置的.
+            //DrawerLayout自己的请求(body, insets, mode, 恢复状态等)照常布局
+            View source = null;
+            final int count = getChildCount();
+            for (int i = 0; i < count; i++) {
+                final View child = getChildAt(i);
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                if (!lp.frozen) {
+                    continue;
+                }
+                final boolean requested = child.isLayoutRequested();
+                if (requested && !lp.frozenLayoutRequested && !lp.frozenLayoutPending) {
+                    source = child;
+                }
+                lp.frozenLayoutRequested = requested;
+            }
+            if (source != null) {
+                //记下来等解冻时再布局
+                ((LayoutParams) source.getLayoutParams()).frozenLayoutPending = true;
+                return;
+            }
+        }
+        super.requestLayout();
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        final int action = ev.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            //有输入的时候不预热, 避免占用主线程
+            cancelPrewarm();
+        } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            schedulePrewarm();
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        schedulePrewarm();
+        registerTrimCallbacks();
+        scheduleTrim();
+    }
+
     public void lockDrawer(int gravity, boolean lock) {
         DrawerDeledge deledge = mDrawerDeledges.ofGravity(gravity);
         if (deledge != null) {
@@ -135,6 +648,141 @@ public class DrawerLayout extends ViewGroup {
         return false;
     }
 
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        DrawerDeledge opened = mDrawerDeledges.ofOpened();
+        if (opened != null) {
+            ss.openGravity = opened.gravity;
+        } else if (mRestoredOpenGravity != Gravity.NO_GRAVITY) {
+            //还没有layout过, 保留上一次恢复的状态
+            ss.openGravity = mRestoredOpenGravity;
+        }
+        for (int i = 0; i < mDrawerDeledges.all.length; i++) {
+            if (mDrawerDeledges.all[i].drawerLocked) {
+                ss.lockedMask |= 1 << i;
+            }
+        }
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        for (int i = 0; i < mDrawerDeledges.all.length; i++) {
+            mDrawerDeledges.all[i].drawerLocked = (ss.lockedMask & (1 << i)) != 0;
+        }
+        if (ss.openGravity == Gravity.NO_GRAVITY) {
+            return;
+        }
+        DrawerDeledge d = mDrawerDeledges.ofGravity(ss.openGravity);
+        if (d != null) {
+            //在children恢复状态之前inflate, 懒加载的内容也能恢复自己的状态
+            d.ensureContent();
+        }
+        //不用settleLayout的动画, 第一次onLayout直接打开
+        mRestoredOpenGravity = ss.openGravity;
+        requestLayout();
+    }
+
+    //在onLayout中应用恢复的打开状态
+    private void applyRestoredState() {
+        if (mRestoredOpenGravity == Gravity.NO_GRAVITY) {
+            return;
+        }
+        DrawerDeledge d = mDrawerDeledges.ofGravity(mRestoredOpenGravity);
+        if (d == null || d.drawerView == null) {
+            //抽屉还没有添加
+            return;
+        }
+        mRestoredOpenGravity = Gravity.NO_GRAVITY;
+        jumpTo(d);
+    }
+
+    /**
+     * 不经过归位直接打开d, 关闭其他的抽屉, 下一次onLayout摆到最终位置
+     * @param d null 全部关闭
+     */
+    private void jumpTo(@Nullable DrawerDeledge d) {
+        mScrollHelper.getSettleEngine().abort();
+        for (DrawerDeledge p : mDrawerDeledges.all) {
+            if (p != d) {
+                p.setOpenImmediately(false);
+            }
+            if (mTranslationDrag) {
+                p.resetTranslation();
+            }
+        }
+        if (d != null) {
+            d.setOpenImmediately(true);
+            mScrollCallback.deledge = d;
+        }
+        dropLayers();
+        mJumpPending = true;
+    }
+
+    /**
+     * 提前inflate抽屉的layout_dlt_lazyLayout, 默认在第一次拖动或者open的时候才inflate
+     */
+    public void inflateDrawerContent(int gravity) {
+        DrawerDeledge d = mDrawerDeledges.ofGravity(gravity);
+        if (d != null) {
+            d.ensureContent();
+        }
+    }
+
+    /**
+     * 在后台线程inflate layout, 完成后在主线程添加到gravity对应的抽屉(占位的ViewGroup)里面.
+     * 完成之前调用open(gravity)会等到内容添加之后再打开, 拖动时先显示占位的抽屉
+     */
+    public void inflateDrawerAsync(int gravity, @LayoutRes int layout) {
+        final DrawerDeledge d = mDrawerDeledges.ofGravity(gravity);
+        if (d == null || !(d.drawerView instanceof ViewGroup)) {
+            throw new IllegalArgumentException("inflateDrawerAsync needs a ViewGroup drawer, gravity " + gravity);
+        }
+        //不再同步inflate layout_dlt_lazyLayout, 释放之后用这个layout重新inflate
+        final LayoutParams lp = (LayoutParams) d.drawerView.getLayoutParams();
+        lp.lazyInflated = true;
+        lp.lazyLayout = layout;
+        if (d.pendingInflate != null) {
+            d.pendingInflate.cancel();
+        }
+        if (mAsyncInflater == null) {
+            mAsyncInflater = new AsyncInflater(getContext());
+        }
+        d.pendingInflate = mAsyncInflater.inflate(layout, (ViewGroup) d.drawerView, (view, resid, parent) -> {
+            d.pendingInflate = null;
+            if (d.drawerView != parent) {
+                //抽屉已经被移除或者替换了
+                d.openWhenInflated = false;
+                return;
+            }
+            parent.addView(view);
+            d.onContentInflated();
+            if (d.openWhenInflated) {
+                d.openWhenInflated = false;
+                open(d.gravity, d.animateWhenInflated);
+            }
+        });
+    }
+
+    /**
+     * @return false 抽屉的layout_dlt_lazyLayout或者inflateDrawerAsync的内容还没有inflate
+     */
+    public boolean isDrawerContentInflated(int gravity) {
+        DrawerDeledge d = mDrawerDeledges.ofGravity(gravity);
+        if (d == null || d.drawerView == null || d.pendingInflate != null) {
+            return false;
+        }
+        LayoutParams lp = (LayoutParams) d.drawerView.getLayoutParams();
+        return lp.lazyLayout == 0 || lp.lazyInflated;
+    }
+
     public boolean isOpen() {
         return getOpenedDrawerView() != null;
     }
@@ -214,14 +862,288 @@ public class DrawerLayout extends ViewGroup {
 
     }
 
-    private static void stopChildScroll(View root) {
-        ViewCompat.stopNestedScroll(root, ViewCompat.TYPE_NON_TOUCH);
-        if (root instanceof ViewGroup) {
-            ViewGroup group = (ViewGroup) root;
-            for (int i = 0; i < group.getChildCount(); i++) {
-                stopChildScroll(group.getChildAt(i));
+    //只停止正在嵌套滚动的view和手指下面的可滚动view
+    private void stopChildScroll() {
+        if (mNestedTarget != null) {
+            ViewCompat.stopNestedScroll(mNestedTarget, ViewCompat.TYPE_NON_TOUCH);
+        }
+        mScrollHelper.stopScrollableChain();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // 嵌套滚动: body里面的RecyclerView, NestedScrollView等把没有消耗的距离交给抽屉
+
+    boolean hasNestedScrollingChild(int dx, int dy) {
+        final int axes = mNestedScrollingParentHelper.getNestedScrollAxes();
+        return (dx != 0 && (axes & ViewCompat.SCROLL_AXIS_HORIZONTAL) != 0)
+                || (dy != 0 && (axes & ViewCompat.SCROLL_AXIS_VERTICAL) != 0);
+    }
+
+    private int getDrawerScrollAxes() {
+        int axes = ViewCompat.SCROLL_AXIS_NONE;
+        for (DrawerDeledge d : mDrawerDeledges.all) {
+            if (d.drawerView != null && !d.drawerLocked) {
+                axes |= d.getScrollDirection() == ViewScrollHelper.DIRECTION_HORIZONTAL
+                        ? ViewCompat.SCROLL_AXIS_HORIZONTAL : ViewCompat.SCROLL_AXIS_VERTICAL;
+            }
+        }
+        return axes;
+    }
+
+    @Override
+    public boolean onStartNestedScroll(@NonNull View child, @NonNull View target, int axes, int type) {
+        return type == ViewCompat.TYPE_TOUCH
+                && isContentView(child)
+                && !mScrollHelper.isDragging()
+                && mDrawerDeledges.ofOpened() == null
+                && (axes & getDrawerScrollAxes()) != 0;
+    }
+
+    @Override
+    public void onNestedScrollAccepted(@NonNull View child, @NonNull View target, int axes, int type) {
+        mNestedScrollingParentHelper.onNestedScrollAccepted(child, target, axes, type);
+        mNestedTarget = target;
+        mNestedDeledge = null;
+        mNestedDeledgeSettled = false;
+        startNestedScroll(axes, type);
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull View target, int type) {
+        mNestedScrollingParentHelper.onStopNestedScroll(target, type);
+        stopNestedScroll(type);
+        if (type != ViewCompat.TYPE_TOUCH) {
+            return;
+        }
+        DrawerDeledge d = mNestedDeledge;
+        if (d != null && !mNestedDeledgeSettled) {
+            if (d.getDrawerVisibleSize() > 0) {
+                d.onDragEnd(0, 0);
+            } else {
+                //拉出来又推回去了或者没有移动, 不会归位, 在这里去掉硬件层
+                if (mTranslationDrag) {
+                    commitTranslation();
+                }
+                dropLayers();
+                d.freezeIfClosed();
+            }
+        }
+        mNestedDeledge = null;
+        mNestedTarget = null;
+    }
+
+    @Override
+    public void onNestedPreScroll(@NonNull View target, int dx, int dy, @NonNull int[] consumed, int type) {
+        DrawerDeledge d = mNestedDeledge;
+        if (type == ViewCompat.TYPE_TOUCH && d != null && d.getDrawerVisibleSize() > 0) {
+            //抽屉已经拉出来了, 手指的移动全部交给抽屉
+            if (d.getScrollDirection() == ViewScrollHelper.DIRECTION_HORIZONTAL) {
+                d.onScroll(0, 0, -dx, 0);
+                consumed[0] += dx;
+            } else {
+                d.onScroll(0, 0, 0, -dy);
+                consumed[1] += dy;
+            }
+        }
+        //剩下的先交给外层
+        final int[] parentConsumed = mNestedParentConsumed;
+        parentConsumed[0] = 0;
+        parentConsumed[1] = 0;
+        if (dispatchNestedPreScroll(dx - consumed[0], dy - consumed[1], parentConsumed, null, type)) {
+            consumed[0] += parentConsumed[0];
+            consumed[1] += parentConsumed[1];
+        }
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed,
+                               int dyUnconsumed, int type, @NonNull int[] consumed) {
+        int dxDrawer = 0;
+        int dyDrawer = 0;
+        DrawerDeledge d = type == ViewCompat.TYPE_TOUCH && (dxUnconsumed != 0 || dyUnconsumed != 0)
+                ? nestedDeledgeFor(dxUnconsumed, dyUnconsumed) : null;
+        if (d != null) {
+            if (d.getScrollDirection() == ViewScrollHelper.DIRECTION_HORIZONTAL) {
+                if (dxUnconsumed != 0) {
+                    d.onScroll(0, 0, -dxUnconsumed, 0);
+                    dxDrawer = dxUnconsumed;
+                }
+            } else if (dyUnconsumed != 0) {
+                d.onScroll(0, 0, 0, -dyUnconsumed);
+                dyDrawer = dyUnconsumed;
             }
+            consumed[0] += dxDrawer;
+            consumed[1] += dyDrawer;
         }
+        //抽屉没有用掉的继续交给外层
+        dispatchNestedScroll(dxConsumed + dxDrawer, dyConsumed + dyDrawer,
+                dxUnconsumed - dxDrawer, dyUnconsumed - dyDrawer, null, type, consumed);
+    }
+
+    //正在嵌套拖动的抽屉, 还没有时根据剩余的方向选择抽屉, 滚动距离和手指方向相反
+    @Nullable
+    private DrawerDeledge nestedDeledgeFor(int dxUnconsumed, int dyUnconsumed) {
+        DrawerDeledge d = mNestedDeledge;
+        if (d != null) {
+            return d;
+        }
+        if (dxUnconsumed < 0) {
+            d = mDrawerDeledges.left();
+        } else if (dxUnconsumed > 0) {
+            d = mDrawerDeledges.right();
+        } else if (dyUnconsumed < 0) {
+            d = mDrawerDeledges.top();
+        } else {
+            d = mDrawerDeledges.bottom();
+        }
+        if (d.drawerView == null || d.drawerLocked) {
+            return null;
+        }
+        mScrollHelper.getSettleEngine().abort();
+        mNestedDeledge = d;
+        mScrollCallback.deledge = d;
+        d.ensureContent();
+        d.thaw();
+        d.promoteLayers();
+        return d;
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed,
+                               int dyUnconsumed, int type) {
+        onNestedScroll(target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, type, mNestedScrollConsumed);
+    }
+
+    @Override
+    public boolean onStartNestedScroll(@NonNull View child, @NonNull View target, int axes) {
+        return onStartNestedScroll(child, target, axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onNestedScrollAccepted(@NonNull View child, @NonNull View target, int axes) {
+        onNestedScrollAccepted(child, target, axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull View target) {
+        onStopNestedScroll(target, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
+        onNestedScroll(target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, ViewCompat.TYPE_TOUCH, mNestedScrollConsumed);
+    }
+
+    @Override
+    public void onNestedPreScroll(@NonNull View target, int dx, int dy, @NonNull int[] consumed) {
+        onNestedPreScroll(target, dx, dy, consumed, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean onNestedPreFling(@NonNull View target, float velocityX, float velocityY) {
+        DrawerDeledge d = mNestedDeledge;
+        if (d == null || d.getDrawerVisibleSize() <= 0) {
+            return dispatchNestedPreFling(velocityX, velocityY);
+        }
+        //fling的速度方向和手指方向相反
+        mNestedDeledgeSettled = true;
+        d.onDragEnd((int) -velocityX, (int) -velocityY);
+        return true;
+    }
+
+    @Override
+    public boolean onNestedFling(@NonNull View target, float velocityX, float velocityY, boolean consumed) {
+        return dispatchNestedFling(velocityX, velocityY, consumed);
+    }
+
+    @Override
+    public int getNestedScrollAxes() {
+        return mNestedScrollingParentHelper.getNestedScrollAxes();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // 嵌套滚动的child: 抽屉没有用掉的嵌套滚动继续交给外层的CoordinatorLayout等
+
+    @Override
+    public void setNestedScrollingEnabled(boolean enabled) {
+        if (mNestedScrollingChildHelper != null) {
+            mNestedScrollingChildHelper.setNestedScrollingEnabled(enabled);
+        }
+    }
+
+    @Override
+    public boolean isNestedScrollingEnabled() {
+        return mNestedScrollingChildHelper.isNestedScrollingEnabled();
+    }
+
+    @Override
+    public boolean startNestedScroll(int axes, int type) {
+        return mNestedScrollingChildHelper.startNestedScroll(axes, type);
+    }
+
+    @Override
+    public boolean startNestedScroll(int axes) {
+        return startNestedScroll(axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void stopNestedScroll(int type) {
+        mNestedScrollingChildHelper.stopNestedScroll(type);
+    }
+
+    @Override
+    public void stopNestedScroll() {
+        stopNestedScroll(ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean hasNestedScrollingParent(int type) {
+        return mNestedScrollingChildHelper.hasNestedScrollingParent(type);
+    }
+
+    @Override
+    public boolean hasNestedScrollingParent() {
+        return hasNestedScrollingParent(ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                     @Nullable int[] offsetInWindow, int type, @NonNull int[] consumed) {
+        mNestedScrollingChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
+                offsetInWindow, type, consumed);
+    }
+
+    @Override
+    public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                        @Nullable int[] offsetInWindow, int type) {
+        return mNestedScrollingChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
+                offsetInWindow, type);
+    }
+
+    @Override
+    public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                        @Nullable int[] offsetInWindow) {
+        return dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, offsetInWindow, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean dispatchNestedPreScroll(int dx, int dy, @Nullable int[] consumed, @Nullable int[] offsetInWindow, int type) {
+        return mNestedScrollingChildHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow, type);
+    }
+
+    @Override
+    public boolean dispatchNestedPreScroll(int dx, int dy, @Nullable int[] consumed, @Nullable int[] offsetInWindow) {
+        return dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean dispatchNestedFling(float velocityX, float velocityY, boolean consumed) {
+        return mNestedScrollingChildHelper.dispatchNestedFling(velocityX, velocityY, consumed);
+    }
+
+    @Override
+    public boolean dispatchNestedPreFling(float velocityX, float velocityY) {
+        return mNestedScrollingChildHelper.dispatchNestedPreFling(velocityX, velocityY);
     }
 
     private static boolean isDrawerOpen(View v) {
@@ -231,6 +1153,22 @@ public class DrawerLayout extends ViewGroup {
 
 
     public void close() {
+        close(true);
+    }
+
+    /**
+     * @param animate false 不经过归位动画, 在下一次layout中直接关闭, onDrawerClosed在返回之前回调
+     */
+    public void close(boolean animate) {
+        if (!animate) {
+            jumpTo(null);
+            requestLayout();
+            mStateChangeQueue.flush();
+            return;
+        }
+        for (DrawerDeledge p : mDrawerDeledges.all) {
+            p.openWhenInflated = false;
+        }
         DrawerDeledge d = mDrawerDeledges.ofOpened();
         if (d != null && mScrollCallback.deledge == null) {
             mScrollCallback.deledge = d;
@@ -241,22 +1179,43 @@ public class DrawerLayout extends ViewGroup {
     }
 
     public void open(int gravity) {
+        open(gravity, true);
+    }
+
+    /**
+     * @param animate false 不经过归位动画, 在下一次layout中直接打开, onDrawerOpened在返回之前回调
+     */
+    public void open(int gravity, boolean animate) {
         DrawerDeledge d = mDrawerDeledges.ofGravity(gravity);
         if (d != null && d.drawerView != null) {
+            if (d.pendingInflate != null) {
+                //等后台inflate完成之后再打开
+                d.openWhenInflated = true;
+                d.animateWhenInflated = animate;
+                return;
+            }
+            d.ensureContent();
+            if (!animate) {
+                jumpTo(d);
+                requestLayout();
+                mStateChangeQueue.flush();
+                return;
+            }
             mScrollCallback.deledge = d;
             d.settleLayout(true);
         }
     }
     
 
-    private class StateChangedRunnable implements Runnable {
-        View drawerView;
-        int gravity;
-        boolean isOpen;
-        @Override
-        public void run() {
-            postStateChanged(drawerView, isOpen, gravity);
-        }
+    /**
+     * @param coalesce true 还没有回调的 打开->关闭->打开 只回调最后的状态
+     */
+    public void setCoalesceStateChanges(boolean coalesce) {
+        mStateChangeQueue.setCoalesce(coalesce);
+    }
+
+    public boolean isCoalesceStateChanges() {
+        return mStateChangeQueue.isCoalesce();
     }
 
     private void postStateChanged(View drawerView, boolean open, int gravity) {
@@ -267,6 +1226,13 @@ public class DrawerLayout extends ViewGroup {
                 mDrawerListener.onDrawerClosed(this, drawerView, gravity);
             }
         }
+        for (DrawerListener listener : mDrawerListeners.get()) {
+            if (open) {
+                listener.onDrawerOpened(this, drawerView, gravity);
+            } else {
+                listener.onDrawerClosed(this, drawerView, gravity);
+            }
+        }
     }
 
     @Override
@@ -290,6 +1256,7 @@ public class DrawerLayout extends ViewGroup {
                 break;
             }
         }
+        applyInsetsToChild(child, true);
         super.onViewAdded(child);
     }
 
@@ -309,21 +1276,103 @@ public class DrawerLayout extends ViewGroup {
 
     @Override
     public void computeScroll() {
-        if (mScroller.computeScrollOffset()) {
-            DrawerDeledge deledge = (DrawerDeledge) mScrollCallback.deledge;
-            if (deledge != null) {
-                deledge.scrollBodyBy(mScroller.getCurrX() - deledge.getDrawerVisibleSize());
-            }
+        stepSettle();
+    }
+
+    //推进一帧归位动画
+    private void stepSettle() {
+        ViewScrollHelper.SettleEngine settle = mScrollHelper.getSettleEngine();
+        if (!settle.computeOffset()) {
+            return;
+        }
+        DrawerDeledge deledge = (DrawerDeledge) mScrollCallback.deledge;
+        boolean redraw = true;
+        if (deledge != null && deledge.drawerView != null) {
+            final int oldPos = deledge.getDrawerVisibleSize();
+            deledge.scrollBodyBy(settle.getCurrent() - oldPos);
+            redraw = deledge.needsParentRedraw(oldPos, deledge.getDrawerVisibleSize());
+        }
+        if (settle.isFinished()) {
+            onSettleFinished();
+            redraw = true;
+        }
+        if (redraw) {
             ViewCompat.postInvalidateOnAnimation(this);
+        } else if (!mSettleStepPosted) {
+            //只有translation变化, 不用重新记录DrawerLayout, 下一帧直接推进动画
+            mSettleStepPosted = true;
+            ViewCompat.postOnAnimation(this, mSettleStepRunnable);
+        }
+    }
+
+    private void onSettleFinished() {
+        if (mScrollHelper.isDragging()) {
+            return;
+        }
+        if (mTranslationDrag) {
+            commitTranslation();
+        }
+        dropLayers();
+    }
+
+    //拖动和归位结束, 去掉临时加上的硬件层
+    private void dropLayers() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (lp.layerPromoted) {
+                lp.layerPromoted = false;
+                child.setLayerType(LAYER_TYPE_NONE, null);
+            }
         }
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mSettleStepPosted) {
+            mSettleStepPosted = false;
+            removeCallbacks(mSettleStepRunnable);
+        }
+        mNestedScrollingChildHelper.onDetachedFromWindow();
+        if (mSlidePending) {
+            mSlidePending = false;
+            Choreographer.getInstance().removeFrameCallback(mSlideFrameCallback);
+        }
+        cancelPrewarm();
+        unregisterTrimCallbacks();
+        removeCallbacks(mTrimRunnable);
+        dropLayers();
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        mScrollHelper.invalidateScrollableChain();
+        applyRestoredState();
+        final boolean jumped = mJumpPending;
+        mJumpPending = false;
+        //拖动和归位中的位置不能被layout重置, child在拖动过程中requestLayout时保持当前的位置
+        DrawerDeledge moving = (DrawerDeledge) mScrollCallback.deledge;
+        if (moving != null && (jumped || !moving.hasLiveOffset())) {
+            moving = null;
+        }
+        int movingVisibleSize = 0;
+        if (moving != null) {
+            movingVisibleSize = moving.getDrawerVisibleSize();
+            if (mTranslationDrag) {
+                for (DrawerDeledge d : mDrawerDeledges.all) {
+                    d.resetTranslation();
+                }
+            }
+        }
         boolean hasLayoutBody = false;
         for (DrawerDeledge d : mDrawerDeledges.all) {
             if (d.drawerView != null) {
+                final LayoutParams lp = (LayoutParams) d.drawerView.getLayoutParams();
+                lp.frozenLayoutPending = false;
                 d.layoutDrawerView();
+                lp.frozenLayoutRequested = d.drawerView.isLayoutRequested();
                 if (d.isDrawerOpen()) {
                     d.layoutBodyView();
                     hasLayoutBody = true;
@@ -333,12 +1382,45 @@ public class DrawerLayout extends ViewGroup {
         if (!hasLayoutBody) {
             mDrawerDeledges.left().layoutBodyView();
         }
+        if (moving != null) {
+            int distance = movingVisibleSize - moving.getDrawerVisibleSize();
+            if (distance != 0) {
+                moving.scrollBodyBy(distance);
+            }
+        }
+        if (mFreezeClosedDrawers) {
+            for (DrawerDeledge d : mDrawerDeledges.all) {
+                d.freezeIfClosed();
+            }
+        }
+        if (jumped) {
+            for (DrawerDeledge d : mDrawerDeledges.all) {
+                if (d.drawerView != null) {
+                    scheduleDrawerSlide(d);
+                }
+            }
+        }
     }
 
     public interface DrawerListener {
         void onDrawerOpened(@NonNull DrawerLayout v, @NonNull View drawerView, int gravity);
 
         void onDrawerClosed(@NonNull DrawerLayout v, @NonNull View drawerView, int gravity);
+
+        /**
+         * 抽屉移动时每帧最多回调一次
+         * @param slideOffset 0 关闭 ~ 1 完全打开
+         */
+        default void onDrawerSlide(@NonNull DrawerLayout v, @NonNull View drawerView, int gravity, float slideOffset) {
+        }
+
+        //setFreezeClosedDrawers(true)时抽屉完全关闭, 可以暂停抽屉里面自己的工作
+        default void onDrawerFrozen(@NonNull DrawerLayout v, @NonNull View drawerView, int gravity) {
+        }
+
+        //抽屉马上要显示了
+        default void onDrawerThawed(@NonNull DrawerLayout v, @NonNull View drawerView, int gravity) {
+        }
     }
 
 
@@ -352,11 +1434,66 @@ public class DrawerLayout extends ViewGroup {
 
 
 
-    public void setChildInsets(Object insets, boolean draw) {
-        this.mInsets = insets;
-        mDrawStatusBarBackground = draw;
-        setWillNotDraw(!draw && getBackground() == null);
-        requestLayout();
+    public void setChildInsets(Object insets, boolean draw) {
+        boolean changed = insets == null ? mInsets != null : !insets.equals(mInsets);
+        if (mDrawStatusBarBackground != draw) {
+            invalidate();
+        }
+        this.mInsets = insets;
+        mDrawStatusBarBackground = draw;
+        setWillNotDraw(!draw && getBackground() == null);
+        //fitsSystemWindows的child每次都要分发(descendant的requestApplyInsets会重新发同样的insets),
+        //margin/padding只在insets变化的时候才修改, 不在onMeasure里面做
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            applyInsetsToChild(getChildAt(i), changed);
+        }
+        if (changed) {
+            requestLayout();
+        }
+    }
+
+    /**
+     * @param rewrite false 只分发给fitsSystemWindows的child, 不修改margin/padding
+     */
+    private void applyInsetsToChild(View child, boolean rewrite) {
+        if (mInsets == null || !ViewCompat.getFitsSystemWindows(this)) {
+            return;
+        }
+        WindowInsetsCompat wi = (WindowInsetsCompat) mInsets;
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        lp.insetsGravity = getAbsoluteInsetsGravity(lp);
+        if (isContentView(child)) {
+            applyWindowInsetsToChild(child, wi, rewrite);
+            return;
+        }
+        if (!isDrawerView(child) || Build.VERSION.SDK_INT < 20) {
+            return;
+        }
+        final int horizontalGravity = Gravity.getAbsoluteGravity(lp.gravity, ViewCompat.getLayoutDirection(this)) & Gravity.HORIZONTAL_GRAVITY_MASK;
+        final int verticalGravity = lp.gravity & Gravity.VERTICAL_GRAVITY_MASK;
+        if (horizontalGravity == Gravity.LEFT) {
+            wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), wi.getSystemWindowInsetTop(),
+                    0, wi.getSystemWindowInsetBottom());
+        }
+        if (horizontalGravity == Gravity.RIGHT) {
+            wi = wi.replaceSystemWindowInsets(0, wi.getSystemWindowInsetTop(),
+                    wi.getSystemWindowInsetRight(), wi.getSystemWindowInsetBottom());
+        }
+        if (verticalGravity == Gravity.TOP) {
+            wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), wi.getSystemWindowInsetTop(),
+                    wi.getSystemWindowInsetRight(), 0);
+        }
+        if (verticalGravity == Gravity.BOTTOM) {
+            wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), 0,
+                    wi.getSystemWindowInsetRight(), wi.getSystemWindowInsetBottom());
+        }
+        applyWindowInsetsToChild(child, wi, rewrite);
+    }
+
+    //insets按照这个gravity裁剪左右, layout direction或者gravity变了需要重新应用
+    private int getAbsoluteInsetsGravity(LayoutParams lp) {
+        return Gravity.getAbsoluteGravity(lp.gravity, ViewCompat.getLayoutDirection(this));
     }
 
     boolean isContentView(View child) {
@@ -367,10 +1504,12 @@ public class DrawerLayout extends ViewGroup {
         return child.getParent() == this && ((LayoutParams) child.getLayoutParams()).gravity != Gravity.NO_GRAVITY;
     }
 
-    private void applyWindowInsetsToChild(View child, WindowInsetsCompat wi) {
+    private void applyWindowInsetsToChild(View child, WindowInsetsCompat wi, boolean rewrite) {
         LayoutParams lp = (LayoutParams) child.getLayoutParams();
         if (ViewCompat.getFitsSystemWindows(child)) {
             ViewCompat.dispatchApplyWindowInsets(child, wi);
+        } else if (!rewrite) {
+            return;
         } else if (lp.applyWindowInsets == LayoutParams.ApplyWindowInsets_Margin) {
             lp.setMargins(wi.getSystemWindowInsetLeft(), wi.getSystemWindowInsetTop(), wi.getSystemWindowInsetRight(), wi.getSystemWindowInsetBottom());
         } else if (lp.applyWindowInsets == LayoutParams.ApplyWindowInsets_Padding) {
@@ -392,7 +1531,16 @@ public class DrawerLayout extends ViewGroup {
         setMeasuredDimension(widthSize, heightSize);
 
         final int childCount = getChildCount();
-        final boolean applyInsets = mInsets != null && ViewCompat.getFitsSystemWindows(this);
+        if (mInsets != null) {
+            //layout direction或者child的gravity变了, 左右裁剪的insets要重新应用
+            for (int i = 0; i < childCount; i++) {
+                final View child = getChildAt(i);
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                if (lp.insetsGravity != getAbsoluteInsetsGravity(lp)) {
+                    applyInsetsToChild(child, true);
+                }
+            }
+        }
 
         //measure content
         int contentSize = 0;
@@ -400,9 +1548,6 @@ public class DrawerLayout extends ViewGroup {
             final View child = getChildAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
             if (isContentView(child)) {
-                if (applyInsets) {
-                    applyWindowInsetsToChild(child, (WindowInsetsCompat) mInsets);
-                }
                 // Content views get measured at exactly the layout's size.
                 final int contentWidthSpec = MeasureSpec.makeMeasureSpec(
                         widthSize - lp.leftMargin - lp.rightMargin, MeasureSpec.EXACTLY);
@@ -417,7 +1562,6 @@ public class DrawerLayout extends ViewGroup {
         }
 
         //measure drawer
-        final int layoutDirection = ViewCompat.getLayoutDirection(this);
         for (int i = 0; i < childCount; i++) {
             final View child = getChildAt(i);
 
@@ -425,62 +1569,43 @@ public class DrawerLayout extends ViewGroup {
                 continue;
             }
 
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-
-            if (!isDrawerView(child)) {
-                continue;
+            if (isDrawerView(child)) {
+                measureDrawer(child, widthMeasureSpec, heightMeasureSpec);
             }
+        }
+    }
 
-            int hMargin = lp.leftMargin + lp.rightMargin;
-            int vMargin = lp.topMargin + lp.bottomMargin;
-            int drawerWidthSpec = getChildMeasureSpec(widthMeasureSpec, hMargin, lp.width);
-            int drawerHeightSpec = getChildMeasureSpec(heightMeasureSpec, vMargin, lp.height);
-
-            final int horizontalGravity = Gravity.getAbsoluteGravity(lp.gravity, layoutDirection) & Gravity.HORIZONTAL_GRAVITY_MASK;
-            final int verticalGravity = lp.gravity & Gravity.VERTICAL_GRAVITY_MASK;
-            boolean isLeftEdgeDrawer = (horizontalGravity == Gravity.LEFT);
-            boolean isRightEdgeDrawer = (horizontalGravity == Gravity.RIGHT);
-            boolean isTopEdgeDrawer = (verticalGravity == Gravity.TOP);
-            boolean isBottomEdgeDrawer = (verticalGravity == Gravity.BOTTOM);
-
+    private void measureDrawer(View child, int widthMeasureSpec, int heightMeasureSpec) {
+        final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        final int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        final int layoutDirection = ViewCompat.getLayoutDirection(this);
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        int hMargin = lp.leftMargin + lp.rightMargin;
+        int vMargin = lp.topMargin + lp.bottomMargin;
+        int drawerWidthSpec = getChildMeasureSpec(widthMeasureSpec, hMargin, lp.width);
+        int drawerHeightSpec = getChildMeasureSpec(heightMeasureSpec, vMargin, lp.height);
 
-            //apply insets
-            if (applyInsets && Build.VERSION.SDK_INT >= 20) {
-                WindowInsetsCompat wi = (WindowInsetsCompat) mInsets;
-                if (isLeftEdgeDrawer) {
-                    wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), wi.getSystemWindowInsetTop(),
-                            0, wi.getSystemWindowInsetBottom());
-                }
-                if (isRightEdgeDrawer) {
-                    wi = wi.replaceSystemWindowInsets(0, wi.getSystemWindowInsetTop(),
-                            wi.getSystemWindowInsetRight(), wi.getSystemWindowInsetBottom());
-                }
-                if (isTopEdgeDrawer) {
-                    wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), wi.getSystemWindowInsetTop(),
-                            wi.getSystemWindowInsetRight(), 0);
-                }
-                if (isBottomEdgeDrawer) {
-                    wi = wi.replaceSystemWindowInsets(wi.getSystemWindowInsetLeft(), 0,
-                            wi.getSystemWindowInsetRight(), wi.getSystemWindowInsetBottom());
-                }
-                applyWindowInsetsToChild(child, wi);
-            }
+        final int horizontalGravity = Gravity.getAbsoluteGravity(lp.gravity, layoutDirection) & Gravity.HORIZONTAL_GRAVITY_MASK;
+        final int verticalGravity = lp.gravity & Gravity.VERTICAL_GRAVITY_MASK;
+        boolean isLeftEdgeDrawer = (horizontalGravity == Gravity.LEFT);
+        boolean isRightEdgeDrawer = (horizontalGravity == Gravity.RIGHT);
+        boolean isTopEdgeDrawer = (verticalGravity == Gravity.TOP);
+        boolean isBottomEdgeDrawer = (verticalGravity == Gravity.BOTTOM);
 
 
-            if (isLeftEdgeDrawer || isRightEdgeDrawer) {
-                if (lp.sizeWeight > 0.01) {
-                    drawerWidthSpec = MeasureSpec.makeMeasureSpec(Math.min((int) (widthSize * lp.sizeWeight), widthSize - hMargin), MeasureSpec.EXACTLY);
-                }
-                drawerHeightSpec = MeasureSpec.makeMeasureSpec(heightSize - vMargin, MeasureSpec.EXACTLY);
+        if (isLeftEdgeDrawer || isRightEdgeDrawer) {
+            if (lp.sizeWeight > 0.01) {
+                drawerWidthSpec = MeasureSpec.makeMeasureSpec(Math.min((int) (widthSize * lp.sizeWeight), widthSize - hMargin), MeasureSpec.EXACTLY);
             }
-            if (isTopEdgeDrawer || isBottomEdgeDrawer) {
-                if (lp.sizeWeight > 0.01) {
-                    drawerHeightSpec = MeasureSpec.makeMeasureSpec(Math.min((int) (heightSize * lp.sizeWeight), heightSize - vMargin), MeasureSpec.EXACTLY);
-                }
-                drawerWidthSpec = MeasureSpec.makeMeasureSpec(widthSize - hMargin, MeasureSpec.EXACTLY);
+            drawerHeightSpec = MeasureSpec.makeMeasureSpec(heightSize - vMargin, MeasureSpec.EXACTLY);
+        }
+        if (isTopEdgeDrawer || isBottomEdgeDrawer) {
+            if (lp.sizeWeight > 0.01) {
+                drawerHeightSpec = MeasureSpec.makeMeasureSpec(Math.min((int) (heightSize * lp.sizeWeight), heightSize - vMargin), MeasureSpec.EXACTLY);
             }
-            child.measure(drawerWidthSpec, drawerHeightSpec);
+            drawerWidthSpec = MeasureSpec.makeMeasureSpec(widthSize - hMargin, MeasureSpec.EXACTLY);
         }
+        child.measure(drawerWidthSpec, drawerHeightSpec);
     }
 
     int getDrawerViewAbsoluteGravity(View drawerView) {
@@ -545,21 +1670,47 @@ public class DrawerLayout extends ViewGroup {
     final RectF bodyRect = new RectF();
     @Override
     protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
-        boolean ret = super.drawChild(canvas, child, drawingTime);
+        if (ViewScrollHelper.isOutOfParent(this, child)) {
+            //已经完全移出屏幕
+            return false;
+        }
+        if (!isContentView(child)) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
         DrawerDeledge deledge = (DrawerDeledge) mScrollCallback.deledge;
         if (deledge == null) {
             deledge = mDrawerDeledges.ofOpened();
         }
-        if (deledge == null) {
-            return ret;
+        final int visibleSize = deledge == null || deledge.drawerView == null ? 0 : deledge.getDrawerVisibleSize();
+        if (visibleSize <= 0) {
+            //抽屉完全关闭, 没有遮罩
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        deledge.getBodyRect(bodyRect);
+        boolean ret;
+        final boolean covered = deledge.coversBody();
+        if (covered && (bodyRect.width() <= 0 || bodyRect.height() <= 0)) {
+            //内容完全被抽屉挡住了
+            return false;
+        }
+        if (covered) {
+            //被不透明的抽屉挡住的部分不用画
+            final int saveCount = canvas.save();
+            canvas.clipRect(bodyRect);
+            ret = super.drawChild(canvas, child, drawingTime);
+            canvas.restoreToCount(saveCount);
+        } else {
+            ret = super.drawChild(canvas, child, drawingTime);
         }
-        if (isContentView(child)) {
-            deledge.getBodyRect(bodyRect);
-            final float scrimOpacity = deledge.getDrawerVisibleSize()*1f / deledge.drawerSize();
-            final int baseAlpha = (mScrimColor & 0xff000000) >>> 24;
-            final int imag = (int) (baseAlpha * scrimOpacity);
+        final float scrimOpacity = visibleSize * 1f / deledge.drawerSize();
+        final int baseAlpha = (mScrimColor & 0xff000000) >>> 24;
+        final int imag = (int) (baseAlpha * scrimOpacity);
+        if (imag > 0 && !bodyRect.isEmpty()) {
             final int color = imag << 24 | (mScrimColor & 0xffffff);
-            mScrimPaint.setColor(color);
+            if (mScrimPaintColor != color) {
+                mScrimPaintColor = color;
+                mScrimPaint.setColor(color);
+            }
             canvas.drawRect(bodyRect, mScrimPaint);
         }
         return ret;
@@ -581,9 +1732,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         public boolean onScroll(int x, int y, int dx, int dy) {
-            if (!mScroller.isFinished()) {
-                mScroller.abortAnimation();
-            }
+            mScrollHelper.getSettleEngine().abort();
             return deledge == null ? false : deledge.onScroll(x, y, dx, dy);
         }
 
@@ -593,6 +1742,18 @@ public class DrawerLayout extends ViewGroup {
                 deledge.onDragEnd(xvel, yvel);
             }
         }
+
+        @Override
+        public void onSettleCaught(int position) {
+            if (mSettlingDeledge != null) {
+                deledge = mSettlingDeledge;
+            }
+            if (deledge != null) {
+                //抽屉停在当前动画的位置, 手指从这里继续拖动
+                deledge.scrollBodyBy(position - deledge.getDrawerVisibleSize());
+                invalidate();
+            }
+        }
     };
 
     private static class DrawerLayoutScrollHerlper extends ViewScrollHelper {
@@ -636,6 +1797,11 @@ public class DrawerLayout extends ViewGroup {
         View drawerView, bodyView;
         boolean drawerViewIsFront = true;
         boolean drawerLocked = false;//true 禁止打开
+        AsyncInflater.Request pendingInflate;//正在后台inflate的内容
+        boolean openWhenInflated;
+        boolean animateWhenInflated = true;
+        boolean slidePending;//需要回调onDrawerSlide
+        float slideFraction;//上次回调的slideOffset
 
         protected DrawerDeledge(int gravity) {
             this.gravity = gravity;
@@ -654,7 +1820,11 @@ public class DrawerLayout extends ViewGroup {
         }
 
         boolean canViewScroll(View view, int x, int y, int dx, int dy) {
-            return ViewScrollHelper.canScroll(view, true, dx, dy, x - view.getLeft() + view.getScrollX(), y - view.getTop() + view.getScrollY());
+            if (drawerLayout.hasNestedScrollingChild(dx, dy)) {
+                //交给嵌套滚动, 由child没有消耗的距离来拖动抽屉
+                return true;
+            }
+            return scrollHelper.canScrollUnder(view, dx, dy);
         }
 
         abstract int drawerSize();
@@ -698,7 +1868,11 @@ public class DrawerLayout extends ViewGroup {
             }
             boolean drag = shouldDragBegin(child, x, y, dx, dy, edge);
             if (drag) {
-                stopChildScroll(bodyView);
+                drawerLayout.stopChildScroll();
+                //确定要拖动了才inflate懒加载的内容, 被拒绝的手势不会inflate
+                ensureContent();
+                thaw();
+                promoteLayers();
             }
             return drag;
         }
@@ -709,8 +1883,12 @@ public class DrawerLayout extends ViewGroup {
         public boolean onScroll(int x, int y, int dx, int dy) {
             //手指从上往下dy>0
 
+            final int oldPos = getDrawerVisibleSize();
             scrollBodyBy(xyToDistance(dx ,dy));
-            drawerLayout.invalidate();
+            final int newPos = getDrawerVisibleSize();
+            if (newPos != oldPos && needsParentRedraw(oldPos, newPos)) {
+                drawerLayout.invalidate();
+            }
             return true;
         }
         
@@ -724,7 +1902,9 @@ public class DrawerLayout extends ViewGroup {
                 settleLayout(false);
                 return;
             }
-            Boolean menuIsOpen = shouldOpenOnRelease(xvel, yvel);
+            //打开的方向为正, 加上拖动开始时接住的归位速度
+            int velocity = xyToDistance(xvel, yvel) + (int) scrollHelper.getCaughtSettleVelocity();
+            Boolean menuIsOpen = shouldOpenOnRelease(velocity);
             if (menuIsOpen == null) {
                 if (isDrawerOpen()) {
                     menuIsOpen = getDrawerVisibleSize() > drawerSize() * lp.pullToClosePosition;
@@ -732,38 +1912,91 @@ public class DrawerLayout extends ViewGroup {
                     menuIsOpen = getDrawerVisibleSize() > drawerSize() * lp.pullToOpenPosition;
                 }
             }
-            settleLayout(menuIsOpen);
+            settleLayout(menuIsOpen, velocity);
         }
 
-        protected abstract Boolean shouldOpenOnRelease(int xvel, int yvel);
+        protected Boolean shouldOpenOnRelease(int velocity) {
+            if (velocity > MinVelSettle) {
+                return true;
+            } else if (velocity < -MinVelSettle) {
+                return false;
+            }
+            return null;
+        }
 
         abstract int drawerMarginEdge();
 
 
-        //释放layout归位
         void settleLayout(boolean open) {
+            settleLayout(open, 0);
+        }
+
+        /**
+         * 释放layout归位
+         * @param velocity 松手时的速度, 打开的方向为正
+         */
+        void settleLayout(boolean open, int velocity) {
             Log.i(TAG, "settleLayout " + open);
-            if (!scrollHelper.getScroller().isFinished()) {
-                scrollHelper.getScroller().forceFinished(true);
-            }
+            ViewScrollHelper.SettleEngine settle = scrollHelper.getSettleEngine();
             if (drawerView == null) {
+                settle.abort();
                 return;
             }
             boolean stateChanged = (open != isDrawerOpen());
-            ((LayoutParams) drawerView.getLayoutParams()).isOpen = open;
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            lp.isOpen = open;
+            if (stateChanged && !open) {
+                lp.closedTime = SystemClock.uptimeMillis();
+                drawerLayout.scheduleTrim();
+            }
             int visibleSize = getDrawerVisibleSize();
-            int distance = open ? drawerSize() - visibleSize : -visibleSize;
-            int duration = scrollHelper.computeSettleDuration(drawerSize(), 0, distance, 0, 0, 0);
-            //无论是x还是y的滚动，都是使用x坐标轴， 反正滚动是距离，在scrollBodyBy中会根据具体坐标轴真实滚动
-            scrollHelper.getScroller().startScroll(visibleSize, 0, distance, 0, duration);
+            int finalSize = open ? drawerSize() : 0;
+            if (!settle.isFinished() && drawerLayout.mSettlingDeledge == this && velocity == 0) {
+                //正在归位, 保持当前的速度只修改终点
+                settle.retarget(finalSize);
+            } else {
+                settle.abort();
+                int distance = finalSize - visibleSize;
+                int duration = scrollHelper.computeSettleDuration(drawerSize(), 0, distance, 0, velocity, 0);
+                //位置是抽屉露出的距离, 在scrollBodyBy中会根据具体坐标轴真实滚动
+                settle.startSettle(visibleSize, distance, velocity, duration);
+            }
+            drawerLayout.mSettlingDeledge = this;
+            if (open) {
+                thaw();
+            }
+            promoteLayers();
             drawerLayout.invalidate();
             if (stateChanged) {
-                StateChangedRunnable stateChangedRunnable = drawerLayout.stateChangedRunnable;
-                stateChangedRunnable.gravity = gravity;
-                stateChangedRunnable.isOpen = open;
-                stateChangedRunnable.drawerView = drawerView;
-                drawerLayout.post(stateChangedRunnable);
+                drawerLayout.mStateChangeQueue.offer(drawerView, gravity, open);
+            }
+        }
+
+        /**
+         * 不经过归位直接修改打开状态, 下一次onLayout摆到最终位置
+         */
+        void setOpenImmediately(boolean open) {
+            if (drawerView == null) {
+                return;
+            }
+            openWhenInflated = false;
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            boolean stateChanged = (open != lp.isOpen);
+            lp.isOpen = open;
+            if (open) {
+                thaw();
+                drawerView.setVisibility(VISIBLE);
+            } else {
+                drawerView.setVisibility(INVISIBLE);
+            }
+            if (!stateChanged) {
+                return;
+            }
+            if (!open) {
+                lp.closedTime = SystemClock.uptimeMillis();
+                drawerLayout.scheduleTrim();
             }
+            drawerLayout.mStateChangeQueue.offer(drawerView, gravity, open);
         }
 
         /**
@@ -779,14 +2012,10 @@ public class DrawerLayout extends ViewGroup {
             int oldPos = getDrawerVisibleSize();
             if (distance + oldPos < minDis) {
                 distance = minDis - oldPos;
-                if (!scrollHelper.getScroller().isFinished()) {
-                    scrollHelper.getScroller().abortAnimation();
-                }
+                scrollHelper.getSettleEngine().abort();
             } else if (distance + oldPos > maxDis) {
                 distance = maxDis - oldPos;
-                if (!scrollHelper.getScroller().isFinished()) {
-                    scrollHelper.getScroller().abortAnimation();
-                }
+                scrollHelper.getSettleEngine().abort();
             }
             if (bodyShouldScroll() && distance != 0) {
                 offsetDrawerDistance(bodyView, distance);
@@ -796,11 +2025,314 @@ public class DrawerLayout extends ViewGroup {
             if (drawerShouldScroll()) {
                 offsetDrawerDistance(drawerView, newPos - oldPos);
             }
-            drawerView.setVisibility(newPos <= minDis ? INVISIBLE : VISIBLE);
+            if (newPos != oldPos) {
+                drawerLayout.scheduleDrawerSlide(this);
+            }
+            if (newPos <= minDis) {
+                drawerView.setVisibility(INVISIBLE);
+                freezeIfClosed();
+            } else {
+                thaw();
+                drawerView.setVisibility(VISIBLE);
+            }
+        }
+
+        void freezeIfClosed() {
+            if (drawerView == null || !drawerLayout.mFreezeClosedDrawers || isDrawerOpen()
+                    || getDrawerVisibleSize() > 0 || isMoving()) {
+                return;
+            }
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (lp.frozen) {
+                return;
+            }
+            lp.frozen = true;
+            lp.frozenLayoutRequested = drawerView.isLayoutRequested();
+            stopAnimatables(drawerView, lp);
+            drawerLayout.dispatchDrawerFrozen(drawerView, gravity, true);
+        }
+
+        void thaw() {
+            if (drawerView == null) {
+                return;
+            }
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (!lp.frozen) {
+                return;
+            }
+            lp.frozen = false;
+            if (lp.frozenAnimatables != null) {
+                for (Animatable animatable : lp.frozenAnimatables) {
+                    animatable.start();
+                }
+                lp.frozenAnimatables.clear();
+            }
+            if (lp.frozenLayoutPending) {
+                lp.frozenLayoutPending = false;
+                drawerLayout.requestLayout();
+            }
+            drawerView.invalidate();
+            drawerLayout.dispatchDrawerFrozen(drawerView, gravity, false);
+        }
+
+        //停止正在运行的drawable动画, 解冻时重新开始
+        private static void stopAnimatables(View view, LayoutParams lp) {
+            stopAnimatable(view.getBackground(), lp);
+            if (view instanceof ImageView) {
+                stopAnimatable(((ImageView) view).getDrawable(), lp);
+            }
+            if (view instanceof ViewGroup) {
+                final ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    stopAnimatables(group.getChildAt(i), lp);
+                }
+            }
+        }
+
+        private static void stopAnimatable(Drawable drawable, LayoutParams lp) {
+            if (drawable instanceof Animatable && ((Animatable) drawable).isRunning()) {
+                if (lp.frozenAnimatables == null) {
+                    lp.frozenAnimatables = new ArrayList<>();
+                }
+                ((Animatable) drawable).stop();
+                lp.frozenAnimatables.add((Animatable) drawable);
+            }
         }
 
         abstract void offsetDrawerDistance(View view, int distance);
 
+        /**
+         * 抽屉从oldPos移动到newPos之后DrawerLayout是否需要重新绘制.
+         * 平移模式下setTranslationX/Y已经刷新了view自己, 只有遮罩, 裁剪或者移入移出屏幕时才需要
+         */
+        boolean needsParentRedraw(int oldPos, int newPos) {
+            if (!drawerLayout.mTranslationDrag) {
+                return true;
+            }
+            final int size = drawerSize();
+            if (oldPos <= 0 || newPos <= 0 || oldPos >= size || newPos >= size) {
+                //drawChild跳过移出屏幕和被完全挡住的view
+                return true;
+            }
+            if ((drawerLayout.mScrimColor >>> 24) != 0) {
+                return true;
+            }
+            return coversBody();
+        }
+
+        void offsetX(View view, int dx) {
+            if (drawerLayout.mTranslationDrag) {
+                view.setTranslationX(view.getTranslationX() + dx);
+            } else {
+                view.offsetLeftAndRight(dx);
+            }
+        }
+
+        void offsetY(View view, int dy) {
+            if (drawerLayout.mTranslationDrag) {
+                view.setTranslationY(view.getTranslationY() + dy);
+            } else {
+                view.offsetTopAndBottom(dy);
+            }
+        }
+
+        //关闭的, 内容已经inflate的抽屉才需要预热, 还没有布局的预热时先布局
+        boolean shouldPrewarm() {
+            if (drawerView == null || isDrawerOpen() || getDrawerVisibleSize() > 0) {
+                return false;
+            }
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (lp.prewarmed || (lp.lazyLayout != 0 && !lp.lazyInflated)) {
+                return false;
+            }
+            return drawerLayout.getMeasuredWidth() > 0 && drawerLayout.getMeasuredHeight() > 0;
+        }
+
+        /**
+         * 懒加载的抽屉在第一次要显示的时候才把layout_dlt_lazyLayout inflate到占位的drawerView里面
+         * @return true 这次inflate了内容
+         */
+        boolean ensureContent() {
+            if (drawerView == null) {
+                return false;
+            }
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (lp.lazyLayout == 0 || lp.lazyInflated) {
+                return false;
+            }
+            lp.lazyInflated = true;
+            if (!(drawerView instanceof ViewGroup)) {
+                Log.w(TAG, "layout_dlt_lazyLayout needs a ViewGroup drawer, gravity " + gravity);
+                return false;
+            }
+            LayoutInflater.from(drawerLayout.getContext()).inflate(lp.lazyLayout, (ViewGroup) drawerView, true);
+            onContentInflated();
+            return true;
+        }
+
+        //恢复释放之前保存的状态
+        void onContentInflated() {
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (lp.trimmedState != null) {
+                drawerView.restoreHierarchyState(lp.trimmedState);
+                lp.trimmedState = null;
+            }
+            if (lp.trimmedSnapshot) {
+                lp.trimmedSnapshot = false;
+                drawerView.setBackground(lp.trimmedBackground);
+                lp.trimmedBackground = null;
+            }
+            lp.closedTime = SystemClock.uptimeMillis();
+            lp.prewarmed = false;
+            drawerLayout.scheduleTrim();
+            drawerLayout.schedulePrewarm();
+        }
+
+        //关闭的, 可以重新inflate的抽屉才能释放
+        boolean canTrim() {
+            if (!(drawerView instanceof ViewGroup) || pendingInflate != null || openWhenInflated) {
+                return false;
+            }
+            final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
+            if (lp.lazyLayout == 0 || !lp.lazyInflated || isDrawerOpen() || getDrawerVisibleSize() > 0) {
+                return false;
+            }
+            return !isMoving();
+        }
+
+        //抽屉不在layout决定的位置上(拖动中, 归位中或者嵌套滚动拖了一半)
+        boolean hasLiveOffset() {
+            if (drawerView == null || bodyView == null || !ViewCompat.isLaidOut(drawerView) || !ViewCompat.isLaidOut(bodyView)) {
+                return false;
+            }
+            return isMoving() || getDrawerVisibleSize() != (isDrawerOpen() ? drawerSize() : 0);
+        }
+
+        //正在拖动或者归位
+        boolean isMoving() {
+            return drawerLayout.mScrollCallback.deledge == this
+                    && (scrollHelper.isDragging() || !scrollHelper.getSettleEngine().isFinished());
+        }
+
+        /**
+         * 保存状态之后移除抽屉的内容, 只留下占位的drawerView
+         * @param snapshotScale >0 保留一张低分辨率的截图作为占位的背景
+         */
+        /**
+         * @param snapshotScale 截图缩放比例, 0表示不截图(内存不足时)
+         */
+        void trimContent(float snapshotScale) {
+            final ViewGroup placeholder = (ViewGroup) drawerView;
+            final LayoutParams lp = (LayoutParams) placeholder.getLayoutParams();
+            SparseArray<Parcelable> state = new SparseArray<>();
+            placeholder.saveHierarchyState(state);
+            lp.trimmedState = state;
+            final int width = (int) (placeholder.getWidth() * snapshotScale);
+            final int height = (int) (placeholder.getHeight() * snapshotScale);
+            if (width > 0 && height > 0 && !lp.trimmedSnapshot) {
+                //抽屉可能是半透明或者圆角的, 需要保留alpha
+                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                try {
+                    Canvas canvas = new Canvas(bitmap);
+                    canvas.scale(snapshotScale, snapshotScale);
+                    placeholder.draw(canvas);
+                } catch (RuntimeException e) {
+                    //软件canvas画不了HARDWARE的bitmap等, 放弃截图
+                    bitmap.recycle();
+                    bitmap = null;
+                }
+                if (bitmap != null) {
+                    lp.trimmedBackground = placeholder.getBackground();
+                    lp.trimmedSnapshot = true;
+                    placeholder.setBackground(new BitmapDrawable(placeholder.getResources(), bitmap));
+                }
+            }
+            //子view要移除了, 不能再持有它们的动画, 也不用在解冻时重新布局
+            if (lp.frozenAnimatables != null) {
+                final Drawable background = lp.trimmedSnapshot ? lp.trimmedBackground : placeholder.getBackground();
+                final boolean keepBackground = background instanceof Animatable
+                        && lp.frozenAnimatables.contains(background);
+                lp.frozenAnimatables.clear();
+                if (keepBackground) {
+                    lp.frozenAnimatables.add((Animatable) background);
+                }
+            }
+            lp.frozenLayoutPending = false;
+            placeholder.removeAllViews();
+            lp.lazyInflated = false;
+            lp.prewarmed = false;
+        }
+
+        //抽屉在内容的上面并且不透明, 横向完全挡住了内容的一部分
+        boolean coversBody() {
+            if (!drawerViewIsFront || !isOpaque(drawerView)) {
+                return false;
+            }
+            if (getScrollDirection() == ViewScrollHelper.DIRECTION_HORIZONTAL) {
+                return top(drawerView) <= 0 && bottom(drawerView) >= drawerLayout.getHeight();
+            } else {
+                return left(drawerView) <= 0 && right(drawerView) >= drawerLayout.getWidth();
+            }
+        }
+
+        static boolean isOpaque(View view) {
+            return ((LayoutParams) view.getLayoutParams()).opaque || view.isOpaque();
+        }
+
+        //拖动和归位过程中移动的view只需要合成硬件层, 不用每帧重新绘制
+        void promoteLayers() {
+            if (drawerShouldScroll()) {
+                promoteLayer(drawerView);
+            }
+            if (bodyShouldScroll()) {
+                promoteLayer(bodyView);
+            }
+        }
+
+        private static void promoteLayer(View view) {
+            if (view == null) {
+                return;
+            }
+            final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+            if (!lp.hardwareLayer || lp.layerPromoted || view.getLayerType() != LAYER_TYPE_NONE) {
+                //禁止使用或者view自己已经设置了layer
+                return;
+            }
+            lp.layerPromoted = true;
+            view.setLayerType(LAYER_TYPE_HARDWARE, null);
+            if (ViewCompat.isAttachedToWindow(view)) {
+                view.buildLayer();
+            }
+        }
+
+        void resetTranslation() {
+            if (drawerView != null) {
+                drawerView.setTranslationX(0);
+                drawerView.setTranslationY(0);
+            }
+            if (bodyView != null) {
+                bodyView.setTranslationX(0);
+                bodyView.setTranslationY(0);
+            }
+        }
+
+        //view当前显示的位置, 平移模式下包括还没有提交的translation
+        int left(View view) {
+            return view.getLeft() + (drawerLayout.mTranslationDrag ? Math.round(view.getTranslationX()) : 0);
+        }
+
+        int right(View view) {
+            return view.getRight() + (drawerLayout.mTranslationDrag ? Math.round(view.getTranslationX()) : 0);
+        }
+
+        int top(View view) {
+            return view.getTop() + (drawerLayout.mTranslationDrag ? Math.round(view.getTranslationY()) : 0);
+        }
+
+        int bottom(View view) {
+            return view.getBottom() + (drawerLayout.mTranslationDrag ? Math.round(view.getTranslationY()) : 0);
+        }
+
         public abstract void layoutDrawerView();
         public abstract void layoutBodyView();
 
@@ -834,9 +2366,9 @@ public class DrawerLayout extends ViewGroup {
                 return 0;
             }
             if (drawerShouldScroll()) {
-                return (drawerView.getRight()  - drawerMarginEdge());
+                return (right(drawerView) - drawerMarginEdge());
             } else {
-                return (bodyView.getLeft() - ((LayoutParams)bodyView.getLayoutParams()).leftMargin);
+                return (left(bodyView) - ((LayoutParams)bodyView.getLayoutParams()).leftMargin);
             }
         }
 
@@ -850,7 +2382,7 @@ public class DrawerLayout extends ViewGroup {
             boolean drag = true;
             boolean isOpen = isDrawerOpen();
             if (drawerLayout.getOpenedDrawerView() == null && (edge & ViewScrollHelper.EDGE_LEFT) == ViewScrollHelper.EDGE_LEFT) {
-            } else if (!scrollHelper.getScroller().isFinished()) {
+            } else if (!scrollHelper.getSettleEngine().isFinished()) {
 //            } else if (x < mBodyView.getLeft()) {
             } else if (dx > 0 && !isOpen && !canViewScroll(child, x, y, dx, 0)) {
                 // 向下滑动
@@ -867,19 +2399,9 @@ public class DrawerLayout extends ViewGroup {
             return dx;
         }
 
-        @Override
-        protected Boolean shouldOpenOnRelease(int xvel, int yvel) {
-            if (xvel > MinVelSettle) {
-                return true;
-            } else if (xvel < -MinVelSettle) {
-                return false;
-            }
-            return null;
-        }
-
         @Override
         void offsetDrawerDistance(View view, int distance) {
-            view.offsetLeftAndRight(distance);
+            offsetX(view, distance);
         }
 
         @Override
@@ -907,7 +2429,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         public void getBodyRect(RectF rect) {
-            rect.set(drawerView.getRight(), 0, drawerLayout.getWidth(), drawerLayout.getHeight());
+            rect.set(right(drawerView), 0, drawerLayout.getWidth(), drawerLayout.getHeight());
         }
     }
 
@@ -928,9 +2450,9 @@ public class DrawerLayout extends ViewGroup {
                 return 0;
             }
             if (drawerShouldScroll()) {
-                return drawerLayout.getWidth() - drawerView.getLeft() - drawerMarginEdge();
+                return drawerLayout.getWidth() - left(drawerView) - drawerMarginEdge();
             } else {
-                return drawerLayout.getWidth() - bodyView.getRight() - ((LayoutParams)bodyView.getLayoutParams()).rightMargin;
+                return drawerLayout.getWidth() - right(bodyView) - ((LayoutParams)bodyView.getLayoutParams()).rightMargin;
             }
         }
 
@@ -944,7 +2466,7 @@ public class DrawerLayout extends ViewGroup {
             boolean drag = true;
             boolean isOpen = isDrawerOpen();
             if (drawerLayout.getOpenedDrawerView() == null && (edge & ViewScrollHelper.EDGE_RIGHT) == ViewScrollHelper.EDGE_RIGHT) {
-            } else if (!scrollHelper.getScroller().isFinished()) {
+            } else if (!scrollHelper.getSettleEngine().isFinished()) {
             } else if (dx < 0 && !isOpen && !canViewScroll(child, x, y, dx, 0)) {
                 // 向左边滑动
             } else if (dx > 0 && isOpen) {
@@ -960,16 +2482,6 @@ public class DrawerLayout extends ViewGroup {
             return -dx;
         }
 
-        @Override
-        protected Boolean shouldOpenOnRelease(int xvel, int yvel) {
-            if (xvel < -MinVelSettle) {
-                return true;
-            } else if (xvel > MinVelSettle) {
-                return false;
-            }
-            return null;
-        }
-
         @Override
         int drawerMarginEdge() {
             return ((LayoutParams)drawerView.getLayoutParams()).rightMargin;
@@ -977,7 +2489,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         void offsetDrawerDistance(View view, int distance) {
-            view.offsetLeftAndRight(-distance);
+            offsetX(view, -distance);
         }
 
         @Override
@@ -1005,7 +2517,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         public void getBodyRect(RectF rect) {
-            rect.set(0, 0, drawerView.getLeft(), drawerLayout.getHeight());
+            rect.set(0, 0, left(drawerView), drawerLayout.getHeight());
 
         }
     }
@@ -1025,9 +2537,9 @@ public class DrawerLayout extends ViewGroup {
                 return 0;
             }
             if (drawerShouldScroll()) {
-                return drawerView.getBottom() - drawerMarginEdge();
+                return bottom(drawerView) - drawerMarginEdge();
             } else {
-                return bodyView.getTop() - ((LayoutParams)bodyView.getLayoutParams()).topMargin;
+                return top(bodyView) - ((LayoutParams)bodyView.getLayoutParams()).topMargin;
             }
         }
 
@@ -1041,7 +2553,7 @@ public class DrawerLayout extends ViewGroup {
             boolean drag = true;
             boolean isOpen = isDrawerOpen();
             if (drawerLayout.getOpenedDrawerView() == null && (edge & ViewScrollHelper.EDGE_TOP) == ViewScrollHelper.EDGE_TOP) {
-            } else if (!scrollHelper.getScroller().isFinished()) {
+            } else if (!scrollHelper.getSettleEngine().isFinished()) {
             } else if (dy > 0 && !isOpen && !canViewScroll(child, x, y, 0, dy)) {
                 // 向下滑动
             } else if (dy < 0 && isOpen) {
@@ -1057,16 +2569,6 @@ public class DrawerLayout extends ViewGroup {
             return dy;
         }
 
-        @Override
-        protected Boolean shouldOpenOnRelease(int xvel, int yvel) {
-            if (yvel > MinVelSettle) {
-                return true;
-            } else if (yvel < -MinVelSettle) {
-                return false;
-            }
-            return null;
-        }
-
         @Override
         int drawerMarginEdge() {
             return ((LayoutParams)drawerView.getLayoutParams()).topMargin;
@@ -1074,7 +2576,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         void offsetDrawerDistance(View view, int distance) {
-            view.offsetTopAndBottom(distance);
+            offsetY(view, distance);
         }
 
         @Override
@@ -1102,7 +2604,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         public void getBodyRect(RectF rect) {
-            rect.set(0, drawerView.getBottom(), drawerLayout.getWidth(), drawerLayout.getHeight());
+            rect.set(0, bottom(drawerView), drawerLayout.getWidth(), drawerLayout.getHeight());
         }
     }
 
@@ -1122,9 +2624,9 @@ public class DrawerLayout extends ViewGroup {
                 return 0;
             }
             if (drawerShouldScroll()) {
-                return drawerLayout.getHeight() - drawerView.getTop() - drawerMarginEdge();
+                return drawerLayout.getHeight() - top(drawerView) - drawerMarginEdge();
             } else {
-                return drawerLayout.getHeight() - bodyView.getBottom() - ((LayoutParams)bodyView.getLayoutParams()).bottomMargin;
+                return drawerLayout.getHeight() - bottom(bodyView) - ((LayoutParams)bodyView.getLayoutParams()).bottomMargin;
             }
         }
 
@@ -1138,7 +2640,7 @@ public class DrawerLayout extends ViewGroup {
             boolean drag = true;
             boolean isOpen = isDrawerOpen();
             if (drawerLayout.getOpenedDrawerView() == null && (edge & ViewScrollHelper.EDGE_BOTTOM) == ViewScrollHelper.EDGE_BOTTOM) {
-            } else if (!scrollHelper.getScroller().isFinished()) {
+            } else if (!scrollHelper.getSettleEngine().isFinished()) {
             } else if (dy < 0 && !isOpen && !canViewScroll(child, x, y, 0, dy)) {
                 // 向上滑动
             } else if (dy > 0 && isOpen) {
@@ -1154,16 +2656,6 @@ public class DrawerLayout extends ViewGroup {
             return -dy;
         }
 
-        @Override
-        protected Boolean shouldOpenOnRelease(int xvel, int yvel) {
-            if (yvel < -MinVelSettle) {
-                return true;
-            } else if (yvel > MinVelSettle) {
-                return false;
-            }
-            return null;
-        }
-
         @Override
         int drawerMarginEdge() {
             return ((LayoutParams)drawerView.getLayoutParams()).bottomMargin;
@@ -1171,7 +2663,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         void offsetDrawerDistance(View view, int distance) {
-            view.offsetTopAndBottom(-distance);
+            offsetY(view, -distance);
         }
 
         @Override
@@ -1199,7 +2691,7 @@ public class DrawerLayout extends ViewGroup {
 
         @Override
         public void getBodyRect(RectF rect) {
-            rect.set(0, 0, drawerLayout.getWidth(), drawerView.getTop());
+            rect.set(0, 0, drawerLayout.getWidth(), top(drawerView));
         }
     }
 
@@ -1250,6 +2742,21 @@ public class DrawerLayout extends ViewGroup {
         boolean isOpen = false;
         int gravity = Gravity.NO_GRAVITY;
         float sizeWeight = 0;
+        boolean hardwareLayer = true;//拖动和归位时使用硬件层
+        boolean opaque = false;//true 不透明, 被挡住的view不用绘制
+        int lazyLayout = 0;//第一次拖动或者open的时候才inflate到抽屉里面的layout
+        boolean lazyInflated = false;
+        boolean prewarmed = false;
+        long closedTime;//最近一次关闭的时间
+        SparseArray<Parcelable> trimmedState;//释放内容之前保存的状态
+        Drawable trimmedBackground;
+        boolean trimmedSnapshot;
+        boolean frozen;//关闭的抽屉被冻结了
+        boolean frozenLayoutPending;
+        boolean frozenLayoutRequested;//上次看到的冻结的抽屉的isLayoutRequested, 用来区分请求是不是从抽屉里面传上来的
+        ArrayList<Animatable> frozenAnimatables;
+        int insetsGravity = -1;//应用insets时的绝对gravity
+        boolean layerPromoted = false;
 
         static final int[] LAYOUT_ATTRS = new int[]{
                 android.R.attr.layout_gravity,
@@ -1271,6 +2778,9 @@ public class DrawerLayout extends ViewGroup {
                 this.applyWindowInsets = a.getInt(R.styleable.DrawerLayout_LayoutParams_layout_dlt_applyWindowInsets, applyWindowInsets);
                 this.sizeWeight = a.getFloat(R.styleable.DrawerLayout_LayoutParams_layout_dlt_sizeWeight, sizeWeight);
                 this.mode = a.getInt(R.styleable.DrawerLayout_LayoutParams_layout_dlt_mode, mode);
+                this.hardwareLayer = a.getBoolean(R.styleable.DrawerLayout_LayoutParams_layout_dlt_hardwareLayer, hardwareLayer);
+                this.opaque = a.getBoolean(R.styleable.DrawerLayout_LayoutParams_layout_dlt_opaque, opaque);
+                this.lazyLayout = a.getResourceId(R.styleable.DrawerLayout_LayoutParams_layout_dlt_lazyLayout, lazyLayout);
                 a.recycle();
             }
         }
@@ -1290,6 +2800,9 @@ public class DrawerLayout extends ViewGroup {
             this.pullToOpenPosition = source.pullToOpenPosition;
             this.isOpen = source.isOpen;
             this.closeType = source.closeType;
+            this.hardwareLayer = source.hardwareLayer;
+            this.opaque = source.opaque;
+            this.lazyLayout = source.lazyLayout;
         }
 
         public LayoutParams(int width, int height) {
@@ -1305,6 +2818,40 @@ public class DrawerLayout extends ViewGroup {
         }
     }
 
+    static class SavedState extends BaseSavedState {
+        int openGravity = Gravity.NO_GRAVITY;
+        int lockedMask;//按DrawerDeledges.all的顺序, 每一位表示一个抽屉被锁定
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            openGravity = source.readInt();
+            lockedMask = source.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeInt(openGravity);
+            dest.writeInt(lockedMask);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     private static class DrawerDeledges {
         DrawerDeledge[] all = {new DrawerDeledgeLeft(), new DrawerDeledgeTop(), new DrawerDeledgeRight(), new DrawerDeledgeBottom()};
         DrawerDeledge left(){
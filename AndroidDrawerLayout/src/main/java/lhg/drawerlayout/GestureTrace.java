@@ -0,0 +1,100 @@
+package lhg.drawerlayout;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Company:
+ * Project:
+ * Author: liuhaoge
+ * Note:  记录ViewScrollHelper的手势事件, 只传递基本类型, move过程中不分配内存
+ */
+public interface GestureTrace {
+    int EVENT_DOWN = 1;             // arg0 = x, arg1 = y
+    int EVENT_SLOP = 2;             // arg0 = dx, arg1 = dy
+    int EVENT_EDGE = 3;             // arg0 = edge
+    int EVENT_CAPTURE = 4;          // arg0 = 1 拖动开始 0 拒绝, arg1 = edge
+    int EVENT_RELEASE = 5;          // arg0 = xvel, arg1 = yvel
+    int EVENT_INVALID_POINTER = 6;  // arg0 = pointerId
+
+    void onEvent(int event, long eventTime, int arg0, int arg1);
+
+    /**
+     * 预分配的环形缓冲区, 满了之后覆盖最旧的记录, 需要时调用dump输出
+     */
+    class RingBuffer implements GestureTrace {
+        private final int[] events;
+        private final long[] times;
+        private final int[] args0;
+        private final int[] args1;
+        private int next;
+        private int size;
+
+        public RingBuffer(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be > 0");
+            }
+            events = new int[capacity];
+            times = new long[capacity];
+            args0 = new int[capacity];
+            args1 = new int[capacity];
+        }
+
+        @Override
+        public void onEvent(int event, long eventTime, int arg0, int arg1) {
+            events[next] = event;
+            times[next] = eventTime;
+            args0[next] = arg0;
+            args1[next] = arg1;
+            next = (next + 1) % events.length;
+            if (size < events.length) {
+                size++;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            next = 0;
+            size = 0;
+        }
+
+        public void dump(@NonNull StringBuilder sb) {
+            int start = (next - size + events.length) % events.length;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % events.length;
+                sb.append(times[index]).append(' ')
+                        .append(eventName(events[index])).append(' ')
+                        .append(args0[index]).append(' ')
+                        .append(args1[index]).append('\n');
+            }
+        }
+
+        public void dump(@NonNull String tag) {
+            StringBuilder sb = new StringBuilder();
+            dump(sb);
+            Log.i(tag, sb.toString());
+        }
+
+        static String eventName(int event) {
+            switch (event) {
+                case EVENT_DOWN:
+                    return "DOWN";
+                case EVENT_SLOP:
+                    return "SLOP";
+                case EVENT_EDGE:
+                    return "EDGE";
+                case EVENT_CAPTURE:
+                    return "CAPTURE";
+                case EVENT_RELEASE:
+                    return "RELEASE";
+                case EVENT_INVALID_POINTER:
+                    return "INVALID_POINTER";
+            }
+            return "UNKNOWN";
+        }
+    }
+}
@@ -2,16 +2,31 @@ package lhg.drawerlayout;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.FrameLayout;
-import android.widget.OverScroller;
+import android.widget.ScrollView;
 
+import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.view.NestedScrollingChild3;
+import androidx.core.view.NestedScrollingChildHelper;
+import androidx.core.view.NestedScrollingParent3;
+import androidx.core.view.NestedScrollingParentHelper;
 import androidx.core.view.ViewCompat;
+import androidx.core.widget.NestedScrollView;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -21,7 +36,7 @@ import androidx.core.view.ViewCompat;
  * Date: 2021/1/1 10:21
  下拉露出背后或者顶部的的view, 最多只能添加两个view
  */
-public class PullDownLayout extends FrameLayout {
+public class PullDownLayout extends FrameLayout implements NestedScrollingParent3, NestedScrollingChild3 {
     private static final String TAG = "PullDownLayout";
     public static final int CloseType_Normal = 0;//正常模式
     public static final int CloseType_Allways = 1;//总是关闭
@@ -42,11 +57,37 @@ public class PullDownLayout extends FrameLayout {
     private float mPullToOpenPosition = 0.5f;//下拉到高度的0.5倍的时候打开
     private float mPullToClosePosition = 0.5f;//上拉到高度的0.5倍的时候关闭
     private PullDownListener mPullDownListener;
+    private static final PullDownListener[] EMPTY_LISTENERS = new PullDownListener[0];
+    //写时复制, 分发时直接遍历数组, 不加锁也不复制
+    private final AtomicReference<PullDownListener[]> mPullDownListeners = new AtomicReference<>(EMPTY_LISTENERS);
+    private boolean mPullPending;
+    private float mPullFraction;//上次回调的fraction
+    private final Choreographer.FrameCallback mPullFrameCallback = frameTimeNanos -> dispatchPull();
 
-    OverScroller mScroller;
     ViewScrollHelper mScrollHelper;
     DispatchTouchEventHelper mDispatchTouchEventHelper;
 
+    private final NestedScrollingParentHelper mNestedScrollingParentHelper = new NestedScrollingParentHelper(this);
+    private final NestedScrollingChildHelper mNestedScrollingChildHelper;//没有用掉的嵌套滚动继续交给外层
+    private final int[] mNestedScrollConsumed = new int[2];
+    private View mNestedTarget;
+    private float mNestedFlingStartVelocity;//child开始惯性滚动时的速度, 手指从上往下 > 0
+    private int mNestedFlingDistance;//child惯性已经滚动的距离
+    private View mHandoffTarget;//head关闭后把剩余的速度交给这个view
+    private int mHandoffVelocity;
+    private boolean mTranslationDrag;//拖动和归位时只修改translationY, 结束后再提交到layout
+    private boolean mHardwareLayer = true;//拖动和归位时使用硬件层
+    private boolean mHeadLayerPromoted;
+    private boolean mBodyOpaque;//true body不透明, 被挡住的head不用绘制
+    private AsyncInflater mAsyncInflater;
+    private AsyncInflater.Request mPendingHeadInflate;
+    private boolean mOpenWhenHeadInflated;
+    private boolean mRestorePending;//恢复的head状态, 在下一次onLayout中直接摆到最终位置
+    private boolean mRestoredHeadOpen;
+    private boolean mJumpPending;//下一次onLayout直接把head摆到最终位置
+    private boolean mAnimateWhenHeadInflated = true;
+    private boolean mBodyLayerPromoted;
+
     public PullDownLayout(Context context) {
         this(context, null);
     }
@@ -64,11 +105,13 @@ public class PullDownLayout extends FrameLayout {
             this.mCloseType = a.getInt(R.styleable.PullDownLayout_pdl_closeType, CloseType_Normal);
             this.mPullToClosePosition = a.getFloat(R.styleable.PullDownLayout_pdl_pullToClosePosition, mPullToClosePosition);
             this.mPullToOpenPosition = a.getFloat(R.styleable.PullDownLayout_pdl_pullToOpenPosition, mPullToOpenPosition);
+            this.mBodyOpaque = a.getBoolean(R.styleable.PullDownLayout_pdl_bodyOpaque, mBodyOpaque);
             a.recycle();
         }
         mScrollHelper = ViewScrollHelper.create(this, mDragHelperCallback);
-        mScroller = mScrollHelper.getScroller();
         mDispatchTouchEventHelper = new DispatchTouchEventHelper();
+        mNestedScrollingChildHelper = new NestedScrollingChildHelper(this);
+        setNestedScrollingEnabled(true);
     }
 
     public PullDownListener getPullDownListener() {
@@ -79,6 +122,277 @@ public class PullDownLayout extends FrameLayout {
         this.mPullDownListener = pullDownListener;
     }
 
+    public void addPullDownListener(@NonNull PullDownListener listener) {
+        while (true) {
+            PullDownListener[] old = mPullDownListeners.get();
+            PullDownListener[] listeners = new PullDownListener[old.length + 1];
+            System.arraycopy(old, 0, listeners, 0, old.length);
+            listeners[old.length] = listener;
+            if (mPullDownListeners.compareAndSet(old, listeners)) {
+                return;
+            }
+        }
+    }
+
+    public void removePullDownListener(@NonNull PullDownListener listener) {
+        while (true) {
+            PullDownListener[] old = mPullDownListeners.get();
+            int index = -1;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            PullDownListener[] listeners = old.length == 1 ? EMPTY_LISTENERS : new PullDownListener[old.length - 1];
+            System.arraycopy(old, 0, listeners, 0, index);
+            System.arraycopy(old, index + 1, listeners, index, old.length - index - 1);
+            if (mPullDownListeners.compareAndSet(old, listeners)) {
+                return;
+            }
+        }
+    }
+
+    //body移动了, 下一帧回调一次onPull
+    private void schedulePull() {
+        if (mPullPending || (mPullDownListener == null && mPullDownListeners.get().length == 0)) {
+            return;
+        }
+        mPullPending = true;
+        Choreographer.getInstance().postFrameCallback(mPullFrameCallback);
+    }
+
+    private void dispatchPull() {
+        mPullPending = false;
+        if (mBodyView == null) {
+            return;
+        }
+        final float fraction = mHeadHeight <= 0 ? 0
+                : Math.max(0f, Math.min(1f, (getBodyOffsetTop() - getPaddingTop()) * 1f / mHeadHeight));
+        if (fraction == mPullFraction) {
+            return;
+        }
+        mPullFraction = fraction;
+        if (mPullDownListener != null) {
+            mPullDownListener.onPull(this, fraction);
+        }
+        for (PullDownListener listener : mPullDownListeners.get()) {
+            listener.onPull(this, fraction);
+        }
+    }
+
+    public void setGestureTrace(@Nullable GestureTrace trace) {
+        mScrollHelper.setGestureTrace(trace);
+    }
+
+    /**
+     * 打开后同一帧内的多个move事件只移动一次view
+     */
+    public void setCoalesceDragPerFrame(boolean coalesce) {
+        mScrollHelper.setCoalesceScrollPerFrame(coalesce);
+    }
+
+    /**
+     * 打开后使用MotionEvent的历史采样点判断拖动开始的位置
+     */
+    public void setProcessHistoricalSamples(boolean process) {
+        mScrollHelper.setProcessHistoricalSamples(process);
+    }
+
+    /**
+     * @param engine 松手之后的归位动画, null 使用默认的OverScroller
+     */
+    public void setSettleEngine(@Nullable ViewScrollHelper.SettleEngine engine) {
+        mScrollHelper.setSettleEngine(engine);
+    }
+
+    /**
+     * 打开后拖动和归位过程中只修改head和body的translationY, 不改变layout的位置,
+     * 归位结束后才把translation提交为真正的位置
+     */
+    public void setTranslationDragEnabled(boolean enabled) {
+        if (mTranslationDrag == enabled) {
+            return;
+        }
+        if (!enabled) {
+            commitTranslation();
+        }
+        mTranslationDrag = enabled;
+    }
+
+    public boolean isTranslationDragEnabled() {
+        return mTranslationDrag;
+    }
+
+    private void commitTranslation() {
+        commitTranslation(mHeadView);
+        commitTranslation(mBodyView);
+    }
+
+    private static void commitTranslation(View view) {
+        if (view == null) {
+            return;
+        }
+        int ty = Math.round(view.getTranslationY());
+        if (ty != 0) {
+            view.setTranslationY(0);
+            view.offsetTopAndBottom(ty);
+        }
+    }
+
+    //view当前显示的top, 平移模式下包括还没有提交的translation
+    private int viewTop(View view) {
+        return view.getTop() + (mTranslationDrag ? Math.round(view.getTranslationY()) : 0);
+    }
+
+    private void offsetViewY(View view, int dy) {
+        if (mTranslationDrag) {
+            view.setTranslationY(view.getTranslationY() + dy);
+        } else {
+            view.offsetTopAndBottom(dy);
+        }
+    }
+
+    /**
+     * @param enabled true 拖动和归位过程中把head和body放到硬件层上, 结束后去掉
+     */
+    public void setHardwareLayerEnabled(boolean enabled) {
+        mHardwareLayer = enabled;
+        if (!enabled) {
+            dropLayers();
+        }
+    }
+
+    public boolean isHardwareLayerEnabled() {
+        return mHardwareLayer;
+    }
+
+    private void promoteLayers() {
+        if (!mHardwareLayer) {
+            return;
+        }
+        if (!mBodyLayerPromoted) {
+            mBodyLayerPromoted = promoteLayer(mBodyView);
+        }
+        if (!mHeadLayerPromoted && mMode == Mode_Top) {
+            mHeadLayerPromoted = promoteLayer(mHeadView);
+        }
+    }
+
+    private static boolean promoteLayer(View view) {
+        if (view == null || view.getLayerType() != LAYER_TYPE_NONE) {
+            //view自己已经设置了layer
+            return false;
+        }
+        view.setLayerType(LAYER_TYPE_HARDWARE, null);
+        if (ViewCompat.isAttachedToWindow(view)) {
+            view.buildLayer();
+        }
+        return true;
+    }
+
+    private void dropLayers() {
+        if (mBodyLayerPromoted) {
+            mBodyLayerPromoted = false;
+            if (mBodyView != null) {
+                mBodyView.setLayerType(LAYER_TYPE_NONE, null);
+            }
+        }
+        if (mHeadLayerPromoted) {
+            mHeadLayerPromoted = false;
+            if (mHeadView != null) {
+                mHeadView.setLayerType(LAYER_TYPE_NONE, null);
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mNestedScrollingChildHelper.onDetachedFromWindow();
+        if (mPullPending) {
+            mPullPending = false;
+            Choreographer.getInstance().removeFrameCallback(mPullFrameCallback);
+        }
+        dropLayers();
+    }
+
+    /**
+     * @param opaque true body不透明, 没有背景也可以跳过被body挡住的head的绘制
+     */
+    public void setBodyOpaque(boolean opaque) {
+        mBodyOpaque = opaque;
+        invalidate();
+    }
+
+    public boolean isBodyOpaque() {
+        return mBodyOpaque;
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (ViewScrollHelper.isOutOfParent(this, child)) {
+            //已经完全移出屏幕
+            return false;
+        }
+        if (child == mHeadView && isHeadCovered()) {
+            return false;
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    //head完全被不透明的body挡住
+    private boolean isHeadCovered() {
+        if (mBodyView == null || mHeadView == null || indexOfChild(mBodyView) < indexOfChild(mHeadView)) {
+            return false;
+        }
+        if (!mBodyOpaque && !mBodyView.isOpaque()) {
+            return false;
+        }
+        return viewTop(mBodyView) <= viewTop(mHeadView)
+                && viewTop(mBodyView) + mBodyView.getHeight() >= viewTop(mHeadView) + mHeadView.getHeight()
+                && mBodyView.getLeft() <= mHeadView.getLeft() && mBodyView.getRight() >= mHeadView.getRight();
+    }
+
+    /**
+     * 在后台线程inflate layout, 完成后在主线程添加到head(占位的ViewGroup)里面.
+     * 完成之前调用open()会等到内容添加之后再打开
+     */
+    public void inflateHeadAsync(@LayoutRes int layout) {
+        if (!(mHeadView instanceof ViewGroup)) {
+            throw new IllegalArgumentException("inflateHeadAsync needs a ViewGroup head");
+        }
+        if (mPendingHeadInflate != null) {
+            mPendingHeadInflate.cancel();
+        }
+        if (mAsyncInflater == null) {
+            mAsyncInflater = new AsyncInflater(getContext());
+        }
+        mPendingHeadInflate = mAsyncInflater.inflate(layout, (ViewGroup) mHeadView, (view, resid, parent) -> {
+            mPendingHeadInflate = null;
+            boolean openWhenInflated = mOpenWhenHeadInflated;
+            mOpenWhenHeadInflated = false;
+            if (mHeadView != parent) {
+                //head已经被移除或者替换了
+                return;
+            }
+            parent.addView(view);
+            if (openWhenInflated) {
+                open(mAnimateWhenHeadInflated);
+            }
+        });
+    }
+
+    /**
+     * @return false inflateHeadAsync的内容还没有添加到head
+     */
+    public boolean isHeadContentInflated() {
+        return mHeadView != null && mPendingHeadInflate == null;
+    }
+
     public View getHeadView() {
         return mHeadView;
     }
@@ -112,6 +426,59 @@ public class PullDownLayout extends FrameLayout {
         return mForbidOpen;
     }
 
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        ss.headOpen = mRestorePending ? mRestoredHeadOpen : mHeadIsOpen;
+        ss.forbidOpen = mForbidOpen;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        mForbidOpen = ss.forbidOpen;
+        if (ss.headOpen != mHeadIsOpen) {
+            //不用settleLayout的动画, 第一次onLayout直接摆到最终位置
+            mRestorePending = true;
+            mRestoredHeadOpen = ss.headOpen;
+            requestLayout();
+        }
+    }
+
+    //在onLayout中应用恢复的head状态
+    private void applyRestoredState() {
+        if (mRestorePending) {
+            mRestorePending = false;
+            jumpTo(mRestoredHeadOpen);
+        }
+    }
+
+    //不经过归位直接修改head的状态, 下一次onLayout摆到最终位置
+    private void jumpTo(boolean open) {
+        mScrollHelper.getSettleEngine().abort();
+        mHandoffTarget = null;
+        if (mTranslationDrag) {
+            if (mBodyView != null) {
+                mBodyView.setTranslationY(0);
+            }
+            if (mHeadView != null) {
+                mHeadView.setTranslationY(0);
+            }
+        }
+        dropLayers();
+        if (open != mHeadIsOpen) {
+            mHeadIsOpen = open;
+            mStateChangeQueue.offer(mHeadView, 0, open);
+        }
+        mJumpPending = true;
+    }
+
     public void setPullToOpenPosition(float pullToOpenPosition) {
         this.mPullToOpenPosition = pullToOpenPosition;
     }
@@ -150,14 +517,12 @@ public class PullDownLayout extends FrameLayout {
         return mScrollHelper.onTouchEvent(ev);
     }
 
-    private void stopChildScroll(View root) {
-        ViewCompat.stopNestedScroll(root, ViewCompat.TYPE_NON_TOUCH);
-        if (root instanceof ViewGroup) {
-            ViewGroup group = (ViewGroup) root;
-            for (int i = 0; i < group.getChildCount(); i++) {
-                stopChildScroll(group.getChildAt(i));
-            }
+    //只停止正在嵌套滚动的view和手指下面的可滚动view
+    private void stopChildScroll() {
+        if (mNestedTarget != null) {
+            ViewCompat.stopNestedScroll(mNestedTarget, ViewCompat.TYPE_NON_TOUCH);
         }
+        mScrollHelper.stopScrollableChain();
     }
 
     private final ViewScrollHelper.Callback mDragHelperCallback = new ViewScrollHelper.Callback() {
@@ -179,8 +544,8 @@ public class PullDownLayout extends FrameLayout {
             }
             boolean drag = true;
             if ((edge & ViewScrollHelper.EDGE_TOP) == ViewScrollHelper.EDGE_TOP) {
-            } else if (!mScroller.isFinished()) {
-            } else if (y < mBodyView.getTop()) {
+            } else if (!mScrollHelper.getSettleEngine().isFinished()) {
+            } else if (y < viewTop(mBodyView)) {
             } else if(dy > 0 && !mHeadIsOpen && !canViewScroll(child, x, y, 0, dy)){
                 // 向下滑动
             } else if (dy < 0 && mHeadIsOpen) {
@@ -189,7 +554,9 @@ public class PullDownLayout extends FrameLayout {
                 drag = false;
             }
             if (drag) {
-                stopChildScroll(mBodyView);
+                mHandoffTarget = null;
+                stopChildScroll();
+                promoteLayers();
             }
             return drag;
         }
@@ -197,16 +564,22 @@ public class PullDownLayout extends FrameLayout {
         @Override
         public boolean onScroll(int x, int y, int dx, int dy) {
             //手指从上往下dy>0
-            if (!mScroller.isFinished()) {
-                mScroller.abortAnimation();
-            }
+            mScrollHelper.getSettleEngine().abort();
             scrollBodyBy(dy);
             return true;
         }
 
+        @Override
+        public void onSettleCaught(int position) {
+            //body停在当前动画的位置, 手指从这里继续拖动
+            scrollBodyBy(position - getBodyOffsetTop());
+            invalidate();
+        }
+
         @Override
         public void onDragEnd(int xvel, int yvel) {
-            //手指从上往下 yvel>0
+            //手指从上往下 yvel>0, 加上拖动开始时接住的归位速度
+            yvel += (int) mScrollHelper.getCaughtSettleVelocity();
             boolean menuIsOpen;
             int topOffset = getBodyOffsetTop();
             if (yvel > MinVelSettle) {
@@ -222,17 +595,60 @@ public class PullDownLayout extends FrameLayout {
             if (mCloseType == CloseType_Allways) {
                 menuIsOpen = false;
             }
-            settleLayout(menuIsOpen);
+            View handoffTarget = null;
+            if (!menuIsOpen && mHeadIsOpen && yvel < -MinVelSettle) {
+                //向上快速滑动关闭, 关闭之后剩余的速度交给child继续滚动
+                handoffTarget = mScrollHelper.findScrollableUnder(mBodyView, 0, -1);
+            }
+            settleLayout(menuIsOpen, yvel);
+            mHandoffTarget = handoffTarget;
+            if (handoffTarget != null) {
+                //关闭用掉了body到顶部的这段距离, 只交出剩余的速度
+                mHandoffVelocity = (int) mScrollHelper.computeFlingVelocityAfter(yvel, topOffset);
+            }
         }
     };
 
     public void close() {
+        close(true);
+    }
+
+    /**
+     * @param animate false 不经过归位动画, 在下一次layout中直接关闭, onHeadClosed在返回之前回调
+     */
+    public void close(boolean animate) {
+        mOpenWhenHeadInflated = false;
+        if (!animate) {
+            jumpTo(false);
+            requestLayout();
+            mStateChangeQueue.flush();
+            return;
+        }
         if (mHeadIsOpen) {
             settleLayout(false);
         }
     }
 
     public void open() {
+        open(true);
+    }
+
+    /**
+     * @param animate false 不经过归位动画, 在下一次layout中直接打开, onHeadOpened在返回之前回调
+     */
+    public void open(boolean animate) {
+        if (mPendingHeadInflate != null) {
+            //等后台inflate完成之后再打开
+            mOpenWhenHeadInflated = true;
+            mAnimateWhenHeadInflated = animate;
+            return;
+        }
+        if (!animate) {
+            jumpTo(true);
+            requestLayout();
+            mStateChangeQueue.flush();
+            return;
+        }
         if (!mHeadIsOpen) {
             settleLayout(true);
         }
@@ -240,27 +656,47 @@ public class PullDownLayout extends FrameLayout {
 
     //释放layout归位
     private void settleLayout(boolean open) {
+        settleLayout(open, 0);
+    }
+
+    /**
+     * @param yvel 松手时的速度, 手指从上往下 > 0
+     */
+    private void settleLayout(boolean open, int yvel) {
         boolean stateChanged = (open != mHeadIsOpen);
         mHeadIsOpen = open;
+        mHandoffTarget = null;
+        ViewScrollHelper.SettleEngine settle = mScrollHelper.getSettleEngine();
         int topOffset = getBodyOffsetTop();
-        int dy = mHeadIsOpen ? mHeadHeight - topOffset : -topOffset;
-        int duration = mScrollHelper.computeSettleDuration(0, mHeadHeight, 0, dy, 0, 0);
-        if (!mScroller.isFinished()) {
-            mScroller.abortAnimation();
+        int finalOffset = mHeadIsOpen ? mHeadHeight : 0;
+        if (!settle.isFinished() && yvel == 0) {
+            //正在归位, 保持当前的速度只修改终点
+            settle.retarget(finalOffset);
+        } else {
+            settle.abort();
+            int dy = finalOffset - topOffset;
+            int duration = mScrollHelper.computeSettleDuration(0, mHeadHeight, 0, dy, 0, yvel);
+            settle.startSettle(topOffset, dy, yvel, duration);
         }
-        mScroller.startScroll(0, topOffset, 0, dy, duration);
+        promoteLayers();
         invalidate();
         if (stateChanged) {
-            post(stateChangedRunnable);
+            mStateChangeQueue.offer(mHeadView, 0, open);
         }
     }
 
-    private final Runnable stateChangedRunnable = new Runnable() {
-        @Override
-        public void run() {
-            postStateChanged(mHeadIsOpen);
-        }
-    };
+    private final StateChangeQueue mStateChangeQueue = new StateChangeQueue(this, (view, key, open) -> postStateChanged(open));
+
+    /**
+     * @param coalesce true 还没有回调的 打开->关闭->打开 只回调最后的状态
+     */
+    public void setCoalesceStateChanges(boolean coalesce) {
+        mStateChangeQueue.setCoalesce(coalesce);
+    }
+
+    public boolean isCoalesceStateChanges() {
+        return mStateChangeQueue.isCoalesce();
+    }
 
     private void postStateChanged(boolean open) {
         if (mPullDownListener != null) {
@@ -270,6 +706,13 @@ public class PullDownLayout extends FrameLayout {
                 mPullDownListener.onHeadClosed(this);
             }
         }
+        for (PullDownListener listener : mPullDownListeners.get()) {
+            if (open) {
+                listener.onHeadOpened(this);
+            } else {
+                listener.onHeadClosed(this);
+            }
+        }
     }
 
     @Override
@@ -299,14 +742,25 @@ public class PullDownLayout extends FrameLayout {
 
 
     public boolean canViewScroll(View view, int x, int y, int dx, int dy) {
-        return mScrollHelper.canScroll(view, true, dx, dy,x - view.getLeft() + view.getScrollX(), y - view.getTop() + view.getScrollY());
+        return mScrollHelper.canScrollUnder(view, dx, dy);
     }
 
 
+    //body不在layout决定的位置上(拖动中或者归位中)
+    private boolean hasLiveOffset() {
+        if (mBodyView == null || mHeadView == null || !ViewCompat.isLaidOut(mBodyView)) {
+            return false;
+        }
+        if (mScrollHelper.isDragging() || !mScrollHelper.getSettleEngine().isFinished()) {
+            return true;
+        }
+        return getBodyOffsetTop() != getPaddingTop() + (mHeadIsOpen ? mHeadHeight : 0);
+    }
+
     //永远>=0
     public int getBodyOffsetTop() {
         LayoutParams lpbody = (LayoutParams) mBodyView.getLayoutParams();
-        return mBodyView.getTop() - lpbody.topMargin;
+        return viewTop(mBodyView) - lpbody.topMargin;
     }
 
     public void scrollBodyBy(int dy) {
@@ -319,43 +773,274 @@ public class PullDownLayout extends FrameLayout {
         int maxTop = mHeadHeight + getPaddingTop();
         if (dy + oldTop < minTop) {
             dy = minTop - oldTop;
-            if (!mScroller.isFinished()) {
-                mScroller.abortAnimation();
-            }
+            mScrollHelper.getSettleEngine().abort();
         } else if (dy + oldTop > maxTop) {
             dy = maxTop - oldTop;
-            if (!mScroller.isFinished()) {
-                mScroller.abortAnimation();
-            }
+            mScrollHelper.getSettleEngine().abort();
         }
 
         if (dy != 0) {
-            mBodyView.offsetTopAndBottom(dy);
+            offsetViewY(mBodyView, dy);
+            schedulePull();
         }
         if (mMode == Mode_Top) {
             LayoutParams lpbody = (LayoutParams) mBodyView.getLayoutParams();
-            oldTop = mHeadView.getTop();
-            int newTop = mBodyView.getTop() - lpbody.topMargin - mHeadHeight;
-            mHeadView.offsetTopAndBottom(newTop - oldTop);
+            oldTop = viewTop(mHeadView);
+            int newTop = viewTop(mBodyView) - lpbody.topMargin - mHeadHeight;
+            offsetViewY(mHeadView, newTop - oldTop);
         } else if (mMode == Mode_Under) {
             LayoutParams lp = (LayoutParams) mHeadView.getLayoutParams();
             int top = getPaddingTop() + lp.topMargin;
-            if (mHeadView.getTop() != top) {
-                mHeadView.offsetTopAndBottom(top - mHeadView.getTop());
+            if (viewTop(mHeadView) != top) {
+                offsetViewY(mHeadView, top - viewTop(mHeadView));
             }
         }
     }
 
     @Override
     public void computeScroll() {
-        if (mScroller.computeScrollOffset()) {
-            scrollBodyBy(mScroller.getCurrY() - getBodyOffsetTop());
+        ViewScrollHelper.SettleEngine settle = mScrollHelper.getSettleEngine();
+        if (settle.computeOffset()) {
+            scrollBodyBy(settle.getCurrent() - getBodyOffsetTop());
+            if (settle.isFinished()) {
+                onSettleFinished();
+            }
             invalidate();
         }
     }
 
+    private void onSettleFinished() {
+        if (!mScrollHelper.isDragging()) {
+            if (mTranslationDrag) {
+                commitTranslation();
+            }
+            dropLayers();
+        }
+        View target = mHandoffTarget;
+        mHandoffTarget = null;
+        if (target != null && !mHeadIsOpen && target.getParent() != null && mHandoffVelocity != 0) {
+            //滚动速度和手指方向相反
+            flingChild(target, -mHandoffVelocity);
+        }
+    }
+
+    private static boolean flingChild(View target, int velocityY) {
+        if (target instanceof RecyclerView) {
+            return ((RecyclerView) target).fling(0, velocityY);
+        } else if (target instanceof NestedScrollView) {
+            ((NestedScrollView) target).fling(velocityY);
+        } else if (target instanceof ScrollView) {
+            ((ScrollView) target).fling(velocityY);
+        } else if (target instanceof AbsListView && Build.VERSION.SDK_INT >= 21) {
+            ((AbsListView) target).fling(velocityY);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    //////////////////////////////////////////////////////////////
+    // 嵌套滚动: child惯性滚动到顶部时, 用剩余的速度打开head
+
+    @Override
+    public boolean onStartNestedScroll(@NonNull View child, @NonNull View target, int axes, int type) {
+        return child == mBodyView && (axes & ViewCompat.SCROLL_AXIS_VERTICAL) != 0;
+    }
+
+    @Override
+    public void onNestedScrollAccepted(@NonNull View child, @NonNull View target, int axes, int type) {
+        mNestedScrollingParentHelper.onNestedScrollAccepted(child, target, axes, type);
+        mNestedTarget = target;
+        startNestedScroll(axes, type);
+        if (type == ViewCompat.TYPE_TOUCH) {
+            //新的手势, 等onNestedPreFling再记录速度
+            mNestedFlingStartVelocity = 0;
+        }
+        mNestedFlingDistance = 0;
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull View target, int type) {
+        mNestedScrollingParentHelper.onStopNestedScroll(target, type);
+        if (mNestedScrollingParentHelper.getNestedScrollAxes() == ViewCompat.SCROLL_AXIS_NONE) {
+            mNestedTarget = null;
+        }
+        stopNestedScroll(type);
+    }
+
+    @Override
+    public void onNestedPreScroll(@NonNull View target, int dx, int dy, @NonNull int[] consumed, int type) {
+        dispatchNestedPreScroll(dx, dy, consumed, null, type);
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed,
+                               int dyUnconsumed, int type, @NonNull int[] consumed) {
+        if (type != ViewCompat.TYPE_NON_TOUCH) {
+            return;
+        }
+        //child的惯性速度: 开始时的速度按照OverScroller的减速模型减去已经滚动的距离
+        mNestedFlingDistance += Math.abs(dyConsumed);
+        final int flingVelocity = (int) mScrollHelper.computeFlingVelocityAfter(mNestedFlingStartVelocity, mNestedFlingDistance);
+        if (dyUnconsumed < 0 && !mHeadIsOpen && !mForbidOpen && mCloseType != CloseType_Allways
+                && !mScrollHelper.isDragging() && mScrollHelper.getSettleEngine().isFinished()
+                && flingVelocity > MinVelSettle) {
+            //child已经滚动到顶部, 惯性不中断, 直接打开head
+            ViewCompat.stopNestedScroll(target, ViewCompat.TYPE_NON_TOUCH);
+            settleLayout(true, flingVelocity);
+            return;
+        }
+        dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, null, type, consumed);
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed,
+                               int dyUnconsumed, int type) {
+        onNestedScroll(target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, type, mNestedScrollConsumed);
+    }
+
+    @Override
+    public boolean onStartNestedScroll(@NonNull View child, @NonNull View target, int axes) {
+        return onStartNestedScroll(child, target, axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onNestedScrollAccepted(@NonNull View child, @NonNull View target, int axes) {
+        onNestedScrollAccepted(child, target, axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull View target) {
+        onStopNestedScroll(target, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void onNestedScroll(@NonNull View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
+        onNestedScroll(target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, ViewCompat.TYPE_TOUCH, mNestedScrollConsumed);
+    }
+
+    @Override
+    public void onNestedPreScroll(@NonNull View target, int dx, int dy, @NonNull int[] consumed) {
+        onNestedPreScroll(target, dx, dy, consumed, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean onNestedPreFling(@NonNull View target, float velocityX, float velocityY) {
+        //velocityY > 0 内容向上滚动
+        mNestedFlingStartVelocity = -velocityY;
+        return dispatchNestedPreFling(velocityX, velocityY);
+    }
+
+    @Override
+    public boolean onNestedFling(@NonNull View target, float velocityX, float velocityY, boolean consumed) {
+        return dispatchNestedFling(velocityX, velocityY, consumed);
+    }
+
+    @Override
+    public int getNestedScrollAxes() {
+        return mNestedScrollingParentHelper.getNestedScrollAxes();
+    }
+
+    //////////////////////////////////////////////////////////////
+    // 嵌套滚动的child: body的嵌套滚动继续交给外层的CoordinatorLayout等
+
+    @Override
+    public void setNestedScrollingEnabled(boolean enabled) {
+        if (mNestedScrollingChildHelper != null) {
+            mNestedScrollingChildHelper.setNestedScrollingEnabled(enabled);
+        }
+    }
+
+    @Override
+    public boolean isNestedScrollingEnabled() {
+        return mNestedScrollingChildHelper.isNestedScrollingEnabled();
+    }
+
+    @Override
+    public boolean startNestedScroll(int axes, int type) {
+        return mNestedScrollingChildHelper.startNestedScroll(axes, type);
+    }
+
+    @Override
+    public boolean startNestedScroll(int axes) {
+        return startNestedScroll(axes, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void stopNestedScroll(int type) {
+        mNestedScrollingChildHelper.stopNestedScroll(type);
+    }
+
+    @Override
+    public void stopNestedScroll() {
+        stopNestedScroll(ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean hasNestedScrollingParent(int type) {
+        return mNestedScrollingChildHelper.hasNestedScrollingParent(type);
+    }
+
+    @Override
+    public boolean hasNestedScrollingParent() {
+        return hasNestedScrollingParent(ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public void dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                     @Nullable int[] offsetInWindow, int type, @NonNull int[] consumed) {
+        mNestedScrollingChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
+                offsetInWindow, type, consumed);
+    }
+
+    @Override
+    public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                        @Nullable int[] offsetInWindow, int type) {
+        return mNestedScrollingChildHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed,
+                offsetInWindow, type);
+    }
+
+    @Override
+    public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
+                                        @Nullable int[] offsetInWindow) {
+        return dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, offsetInWindow, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean dispatchNestedPreScroll(int dx, int dy, @Nullable int[] consumed, @Nullable int[] offsetInWindow, int type) {
+        return mNestedScrollingChildHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow, type);
+    }
+
+    @Override
+    public boolean dispatchNestedPreScroll(int dx, int dy, @Nullable int[] consumed, @Nullable int[] offsetInWindow) {
+        return dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow, ViewCompat.TYPE_TOUCH);
+    }
+
+    @Override
+    public boolean dispatchNestedFling(float velocityX, float velocityY, boolean consumed) {
+        return mNestedScrollingChildHelper.dispatchNestedFling(velocityX, velocityY, consumed);
+    }
+
+    @Override
+    public boolean dispatchNestedPreFling(float velocityX, float velocityY) {
+        return mNestedScrollingChildHelper.dispatchNestedPreFling(velocityX, velocityY);
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        mScrollHelper.invalidateScrollableChain();
+        applyRestoredState();
+        final boolean jumped = mJumpPending;
+        mJumpPending = false;
+        //拖动和归位中的位置不能被layout重置, child在拖动过程中requestLayout时保持当前的位置
+        boolean keepOffset = !jumped && hasLiveOffset();
+        int bodyOffset = keepOffset ? getBodyOffsetTop() : 0;
+        if (keepOffset && mTranslationDrag) {
+            mBodyView.setTranslationY(0);
+            if (mHeadView != null) {
+                mHeadView.setTranslationY(0);
+            }
+        }
         final int count = getChildCount();
         final int parentLeft = getPaddingLeft();
         final int parentTop = getPaddingTop();
@@ -377,13 +1062,60 @@ public class PullDownLayout extends FrameLayout {
             }
             child.layout(childLeft, childTop, childLeft + width, childTop + height);
         }
+        if (keepOffset && bodyOffset != getBodyOffsetTop()) {
+            scrollBodyBy(bodyOffset - getBodyOffsetTop());
+        }
+        if (jumped && mBodyView != null) {
+            schedulePull();
+        }
     }
 
 
 
+    static class SavedState extends BaseSavedState {
+        boolean headOpen;
+        boolean forbidOpen;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source) {
+            super(source);
+            headOpen = source.readInt() != 0;
+            forbidOpen = source.readInt() != 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeInt(headOpen ? 1 : 0);
+            dest.writeInt(forbidOpen ? 1 : 0);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     public interface PullDownListener {
         void onHeadOpened(@NonNull PullDownLayout v);
         void onHeadClosed(@NonNull PullDownLayout v);
+
+        /**
+         * body移动时每帧最多回调一次
+         * @param fraction 0 关闭 ~ 1 head完全打开
+         */
+        default void onPull(@NonNull PullDownLayout v, float fraction) {
+        }
     }
 
     static class DispatchTouchEventHelper {
@@ -0,0 +1,108 @@
+package lhg.drawerlayout;
+
+import android.view.animation.AnimationUtils;
+
+/**
+ * Company:
+ * Project:
+ * Author: liuhaoge
+ * Note:  临界阻尼弹簧, 从松手时的速度开始归位, 没有固定的时长, 可以在动画过程中修改目标位置
+ */
+public class SpringSettleEngine implements ViewScrollHelper.SettleEngine {
+    private static final float DEFAULT_STIFFNESS = 400f;
+    private static final float REST_DISPLACEMENT = 0.5f; // px
+    private static final float REST_VELOCITY = 20f; // px/s
+
+    private final float mOmega;
+    private long mStartTime;
+    private float mTarget;
+    // 位移 = (mC1 + mC2 * t) * e^(-ωt)
+    private float mC1;
+    private float mC2;
+    private int mCurrent;
+    private float mVelocity;
+    private boolean mFinished = true;
+
+    public SpringSettleEngine() {
+        this(DEFAULT_STIFFNESS);
+    }
+
+    /**
+     * @param stiffness 越大归位越快, 质量为1
+     */
+    public SpringSettleEngine(float stiffness) {
+        if (stiffness <= 0) {
+            throw new IllegalArgumentException("stiffness must be > 0");
+        }
+        mOmega = (float) Math.sqrt(stiffness);
+    }
+
+    @Override
+    public void startSettle(int start, int distance, int velocity, int duration) {
+        start(start, start + distance, velocity);
+    }
+
+    @Override
+    public void retarget(int finalPosition) {
+        if (mFinished) {
+            start(mCurrent, finalPosition, 0);
+            return;
+        }
+        computeOffset();
+        start(mCurrent, finalPosition, mVelocity);
+    }
+
+    private void start(float position, float target, float velocity) {
+        mStartTime = AnimationUtils.currentAnimationTimeMillis();
+        mTarget = target;
+        mC1 = position - target;
+        mC2 = velocity + mOmega * mC1;
+        mCurrent = Math.round(position);
+        mVelocity = velocity;
+        mFinished = false;
+    }
+
+    @Override
+    public boolean computeOffset() {
+        if (mFinished) {
+            return false;
+        }
+        final float t = (AnimationUtils.currentAnimationTimeMillis() - mStartTime) / 1000f;
+        final float decay = (float) Math.exp(-mOmega * t);
+        final float displacement = (mC1 + mC2 * t) * decay;
+        mVelocity = (mC2 - mOmega * (mC1 + mC2 * t)) * decay;
+        if (Math.abs(displacement) < REST_DISPLACEMENT && Math.abs(mVelocity) < REST_VELOCITY) {
+            mCurrent = Math.round(mTarget);
+            mVelocity = 0;
+            mFinished = true;
+        } else {
+            mCurrent = Math.round(mTarget + displacement);
+        }
+        return true;
+    }
+
+    @Override
+    public int getCurrent() {
+        return mCurrent;
+    }
+
+    @Override
+    public int getFinal() {
+        return Math.round(mTarget);
+    }
+
+    @Override
+    public float getCurrVelocity() {
+        return mVelocity;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    @Override
+    public void abort() {
+        mFinished = true;
+    }
+}
@@ -0,0 +1,145 @@
+package lhg.drawerlayout;
+
+import android.view.View;
+
+/**
+ * Company:
+ * Project:
+ * Author: liuhaoge
+ * Note:  打开/关闭状态变化的队列, 预分配的环形数组, 按顺序在一个post的Runnable里面回调, 不会丢失事件
+ */
+final class StateChangeQueue implements Runnable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    interface Dispatcher {
+        void dispatchStateChanged(View view, int key, boolean open);
+    }
+
+    private final View mHost;
+    private final Dispatcher mDispatcher;
+    private View[] mViews = new View[INITIAL_CAPACITY];
+    private int[] mKeys = new int[INITIAL_CAPACITY];
+    private boolean[] mOpens = new boolean[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+    private boolean mPosted;
+    private boolean mCoalesce;
+
+    StateChangeQueue(View host, Dispatcher dispatcher) {
+        mHost = host;
+        mDispatcher = dispatcher;
+    }
+
+    /**
+     * @param coalesce true 同一个key还没有回调的 打开->关闭 互相抵消, 只回调最后的状态
+     */
+    void setCoalesce(boolean coalesce) {
+        mCoalesce = coalesce;
+    }
+
+    boolean isCoalesce() {
+        return mCoalesce;
+    }
+
+    /**
+     * @param key 区分不同的抽屉, 比如gravity
+     */
+    void offer(View view, int key, boolean open) {
+        if (mCoalesce) {
+            int index = lastIndexOf(key);
+            if (index >= 0 && mOpens[(mHead + index) % mKeys.length] != open) {
+                //状态变化是交替的, 还没有回调的上一次变化和这一次抵消了
+                removeAt(index);
+                return;
+            }
+        }
+        if (mSize == mKeys.length) {
+            grow();
+        }
+        int tail = (mHead + mSize) % mKeys.length;
+        mViews[tail] = view;
+        mKeys[tail] = key;
+        mOpens[tail] = open;
+        mSize++;
+        if (!mPosted) {
+            mPosted = true;
+            mHost.post(this);
+        }
+    }
+
+    /**
+     * 立即按顺序回调所有还没有回调的状态变化
+     */
+    void flush() {
+        if (mPosted) {
+            mHost.removeCallbacks(this);
+        }
+        run();
+    }
+
+    @Override
+    public void run() {
+        //回调中产生的新状态也在这里按顺序处理
+        mPosted = true;
+        try {
+            while (mSize > 0) {
+                final View view = mViews[mHead];
+                final int key = mKeys[mHead];
+                final boolean open = mOpens[mHead];
+                mViews[mHead] = null;
+                mHead = (mHead + 1) % mKeys.length;
+                mSize--;
+                mDispatcher.dispatchStateChanged(view, key, open);
+            }
+        } finally {
+            //回调抛异常时剩下的状态变化下次再回调, 不能一直卡在mPosted
+            mPosted = false;
+            if (mSize == 0) {
+                mHead = 0;
+            } else {
+                mPosted = true;
+                mHost.post(this);
+            }
+        }
+    }
+
+    private int lastIndexOf(int key) {
+        for (int i = mSize - 1; i >= 0; i--) {
+            if (mKeys[(mHead + i) % mKeys.length] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        final int capacity = mKeys.length;
+        for (int i = index; i < mSize - 1; i++) {
+            int to = (mHead + i) % capacity;
+            int from = (mHead + i + 1) % capacity;
+            mViews[to] = mViews[from];
+            mKeys[to] = mKeys[from];
+            mOpens[to] = mOpens[from];
+        }
+        mViews[(mHead + mSize - 1) % capacity] = null;
+        mSize--;
+    }
+
+    //只有队列满了才会分配新的数组
+    private void grow() {
+        final int capacity = mKeys.length;
+        View[] views = new View[capacity * 2];
+        int[] keys = new int[capacity * 2];
+        boolean[] opens = new boolean[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            int from = (mHead + i) % capacity;
+            views[i] = mViews[from];
+            keys[i] = mKeys[from];
+            opens[i] = mOpens[from];
+        }
+        mViews = views;
+        mKeys = keys;
+        mOpens = opens;
+        mHead = 0;
+    }
+}
@@ -1,18 +1,22 @@
 package lhg.drawerlayout;
 
 import android.content.Context;
-import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 import android.widget.OverScroller;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.view.ViewCompat;
+
+import java.util.Arrays;
 
 /**
  * Company:
@@ -38,17 +42,26 @@ public class ViewScrollHelper {
 
     private static final int BASE_SETTLE_DURATION = 256; // ms
     private static final int MAX_SETTLE_DURATION = 600; // ms
+    private static final float CAUGHT_VELOCITY_DECAY = 120f; // ms
+    //和OverScroller惯性滚动相同的减速模型
+    private static final float DECELERATION_RATE = (float) (Math.log(0.78) / Math.log(0.9));
+    private static final float INFLEXION = 0.35f;
     private final int mEdgeSize;
+    private final float mFlingDistanceCoeff;
 
     // Distance to travel before a drag may begin
     protected int mTouchSlop;
 
     // Last known position/pointer tracking
     private int mActivePointerId = INVALID_POINTER;
-    private int mLastMotionX;
-    private int mLastMotionY;
-    private int mInitMotionX;
-    private int mInitMotionY;
+    private float mLastMotionX;
+    private float mLastMotionY;
+    private float mInitMotionX;
+    private float mInitMotionY;
+    private int mInitialEdges;//ACTION_DOWN时手指所在的边缘
+    // onScroll只回调整数像素, 小数部分留到下一次move
+    private float mScrollRemainderX;
+    private float mScrollRemainderY;
 
     private VelocityTracker mVelocityTracker;
     private float mMaxVelocity;
@@ -58,7 +71,30 @@ public class ViewScrollHelper {
     private final ViewGroup mView;
     private boolean mIsDragging;
     private OverScroller mScroller;
+    private SettleEngine mSettleEngine;
     private boolean wrongDirectionScrollFirst = false;
+    // 默认为null, 不记录任何事件
+    private GestureTrace mTrace;
+
+    // ACTION_DOWN时手指下面可以滚动的view, 上层的在前面, layout之后失效
+    private View[] mScrollableChain = new View[8];
+    private int mScrollableChainSize;
+    private boolean mScrollableChainValid;
+    private long mScrollableChainDownTime = -1;
+
+    // 每帧只回调一次onScroll, 同一帧内的多个move事件累加
+    private boolean mCoalesceScroll;
+    private boolean mScrollPending;
+    private int mPendingX, mPendingY, mPendingDx, mPendingDy;
+    private final Choreographer.FrameCallback mScrollFrameCallback = frameTimeNanos -> flushPendingScroll();
+    // 处理MotionEvent中批量的历史采样点
+    private boolean mProcessHistory;
+
+    // 归位动画过程中被按住时的速度, 松手时按住的时间越长衰减越多
+    private long mCaughtDownTime = -1;
+    private long mCaughtTime;
+    private float mCaughtVelocity;
+    private float mReleaseCaughtVelocity;
 
     public void setIsDragging(boolean b) {
         mIsDragging = b;
@@ -74,6 +110,107 @@ public class ViewScrollHelper {
         boolean onDragBegin(View child, int x, int y, int dx, int dy, int edge);
         boolean onScroll(int x, int y, int dx, int dy);
         void onDragEnd(int xvel, int yvel);
+        //归位动画过程中被手指按住, position是动画当前的位置, 需要把view移动到这里
+        default void onSettleCaught(int position) {
+        }
+    }
+
+    /**
+     * 松手之后的归位动画, 只有一个方向, 位置是抽屉露出的距离或者body的偏移
+     */
+    public interface SettleEngine {
+        /**
+         * @param start 开始的位置
+         * @param distance 终点减去start, 可以是负数
+         * @param velocity 松手时在位置轴上的速度(px/s), 带符号: 位置变大的方向为正, 和distance的正负无关.
+         *                 比如distance为负时velocity为正表示还在往反方向运动
+         * @param duration computeSettleDuration计算的时长, 不需要时可以忽略
+         */
+        void startSettle(int start, int distance, int velocity, int duration);
+        //动画过程中修改终点, 保持当前的位置和速度
+        void retarget(int finalPosition);
+        //返回true表示位置有更新
+        boolean computeOffset();
+        int getCurrent();
+        int getFinal();
+        float getCurrVelocity();
+        boolean isFinished();
+        //停在当前位置
+        void abort();
+    }
+
+    /**
+     * 默认的归位动画, 使用OverScroller.startScroll
+     */
+    public static class ScrollerSettleEngine implements SettleEngine {
+        private final OverScroller mScroller;
+        private long mStartTime;
+        private int mDuration;
+        private long mLastTime;
+        private int mLastPosition;
+        private float mVelocity;
+
+        public ScrollerSettleEngine(@NonNull OverScroller scroller) {
+            mScroller = scroller;
+        }
+
+        @Override
+        public void startSettle(int start, int distance, int velocity, int duration) {
+            mScroller.startScroll(start, 0, distance, 0, duration);
+            mStartTime = mLastTime = AnimationUtils.currentAnimationTimeMillis();
+            mDuration = duration;
+            mLastPosition = start;
+            mVelocity = velocity;
+        }
+
+        @Override
+        public void retarget(int finalPosition) {
+            final int current = mScroller.getCurrX();
+            final int remaining = mScroller.isFinished() ? 0
+                    : (int) Math.max(0, mDuration - (AnimationUtils.currentAnimationTimeMillis() - mStartTime));
+            mScroller.forceFinished(true);
+            startSettle(current, finalPosition - current, (int) mVelocity,
+                    Math.max(remaining, BASE_SETTLE_DURATION));
+        }
+
+        @Override
+        public boolean computeOffset() {
+            if (!mScroller.computeScrollOffset()) {
+                return false;
+            }
+            final long now = AnimationUtils.currentAnimationTimeMillis();
+            if (now > mLastTime) {
+                mVelocity = (mScroller.getCurrX() - mLastPosition) * 1000f / (now - mLastTime);
+            }
+            mLastTime = now;
+            mLastPosition = mScroller.getCurrX();
+            return true;
+        }
+
+        @Override
+        public int getCurrent() {
+            return mScroller.getCurrX();
+        }
+
+        @Override
+        public int getFinal() {
+            return mScroller.getFinalX();
+        }
+
+        @Override
+        public float getCurrVelocity() {
+            return mScroller.isFinished() ? 0 : mVelocity;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return mScroller.isFinished();
+        }
+
+        @Override
+        public void abort() {
+            mScroller.forceFinished(true);
+        }
     }
 
     /**
@@ -112,14 +249,54 @@ public class ViewScrollHelper {
         mMaxVelocity = vc.getScaledMaximumFlingVelocity();
         mMinVelocity = vc.getScaledMinimumFlingVelocity();
         mScroller = new OverScroller(mView.getContext(), sInterpolator);
+        mSettleEngine = new ScrollerSettleEngine(mScroller);
         final float density = context.getResources().getDisplayMetrics().density;
         mEdgeSize = (int) (20 /*dp*/ * density + 0.5f);
+        final float ppi = density * 160.0f;
+        mFlingDistanceCoeff = ViewConfiguration.getScrollFriction() * 9.80665f /*GRAVITY_EARTH*/ * 39.37f * ppi * 0.84f;
+    }
+
+    /**
+     * 按照OverScroller的减速模型, 初速度为velocity的惯性滚动经过distance之后剩余的速度
+     * @return 方向和velocity相同, 滚不到distance时返回0
+     */
+    public float computeFlingVelocityAfter(float velocity, int distance) {
+        if (velocity == 0 || mFlingDistanceCoeff <= 0) {
+            return 0;
+        }
+        final double remaining = splineFlingDistance(Math.abs(velocity)) - Math.abs(distance);
+        if (remaining <= 0) {
+            return 0;
+        }
+        //splineFlingDistance的反函数
+        final double v = mFlingDistanceCoeff / INFLEXION
+                * Math.pow(remaining / mFlingDistanceCoeff, (DECELERATION_RATE - 1) / DECELERATION_RATE);
+        return (float) Math.copySign(v, velocity);
+    }
+
+    //速度为velocity的惯性滚动能滚动的距离
+    private double splineFlingDistance(float velocity) {
+        final double l = Math.log(INFLEXION * velocity / mFlingDistanceCoeff);
+        return mFlingDistanceCoeff * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1) * l);
     }
 
     public OverScroller getScroller() {
         return mScroller;
     }
 
+    @NonNull
+    public SettleEngine getSettleEngine() {
+        return mSettleEngine;
+    }
+
+    /**
+     * @param engine null 使用默认的OverScroller
+     */
+    public void setSettleEngine(@Nullable SettleEngine engine) {
+        mSettleEngine.abort();
+        mSettleEngine = engine != null ? engine : new ScrollerSettleEngine(mScroller);
+    }
+
     public void setMinVelocity(float minVel) {
         mMinVelocity = minVel;
     }
@@ -141,10 +318,108 @@ public class ViewScrollHelper {
         return mTouchSlop;
     }
 
+    public void setGestureTrace(@Nullable GestureTrace trace) {
+        mTrace = trace;
+    }
+
+    @Nullable
+    public GestureTrace getGestureTrace() {
+        return mTrace;
+    }
+
+
+    /**
+     * 高采样率的屏幕一帧会收到多个move事件, 打开后每帧只移动一次view, 速度计算仍然使用全部事件
+     */
+    public void setCoalesceScrollPerFrame(boolean coalesce) {
+        if (!coalesce) {
+            flushPendingScroll();
+        }
+        mCoalesceScroll = coalesce;
+    }
+
+    public boolean isCoalesceScrollPerFrame() {
+        return mCoalesceScroll;
+    }
+
+    /**
+     * 打开后逐个处理MotionEvent的历史采样点, 在越过slop的那个采样点开始拖动, 减少拖动开始的延迟
+     */
+    public void setProcessHistoricalSamples(boolean process) {
+        mProcessHistory = process;
+    }
+
+    public boolean isProcessHistoricalSamples() {
+        return mProcessHistory;
+    }
+
+    private void dispatchScroll(int x, int y, int dx, int dy) {
+        if (!mCoalesceScroll) {
+            mCallback.onScroll(x, y, dx, dy);
+            return;
+        }
+        mPendingX = x;
+        mPendingY = y;
+        mPendingDx += dx;
+        mPendingDy += dy;
+        if (!mScrollPending) {
+            mScrollPending = true;
+            Choreographer.getInstance().postFrameCallback(mScrollFrameCallback);
+        }
+    }
+
+    private void flushPendingScroll() {
+        if (!mScrollPending) {
+            return;
+        }
+        mScrollPending = false;
+        Choreographer.getInstance().removeFrameCallback(mScrollFrameCallback);
+        final int dx = mPendingDx;
+        final int dy = mPendingDy;
+        mPendingDx = mPendingDy = 0;
+        if (mIsDragging) {
+            mCallback.onScroll(mPendingX, mPendingY, dx, dy);
+        }
+    }
+
+    /**
+     * 归位动画过程中按下时, 停在动画当前的位置继续拖动, 并记下动画的速度
+     * @return true 接住了正在归位的view
+     */
+    private boolean catchSettle(MotionEvent ev) {
+        if (mCaughtDownTime == ev.getDownTime()) {
+            //同一个手势在interceptTouchEvent中已经接住了
+            return true;
+        }
+        mCaughtVelocity = 0;
+        if (mSettleEngine.isFinished()) {
+            return false;
+        }
+        mSettleEngine.computeOffset();
+        mCaughtVelocity = mSettleEngine.getCurrVelocity();
+        mCaughtTime = ev.getEventTime();
+        mCaughtDownTime = ev.getDownTime();
+        final int position = mSettleEngine.getCurrent();
+        mSettleEngine.abort();
+        mCallback.onSettleCaught(position);
+        return true;
+    }
+
+    /**
+     * @return 在onDragEnd中调用, 本次拖动开始时接住的归位速度(已衰减), 方向和SettleEngine的位置相同
+     */
+    public float getCaughtSettleVelocity() {
+        return mReleaseCaughtVelocity;
+    }
 
     public void cancel() {
         mIsDragging = false;
         mActivePointerId = INVALID_POINTER;
+        if (mScrollPending) {
+            mScrollPending = false;
+            mPendingDx = mPendingDy = 0;
+            Choreographer.getInstance().removeFrameCallback(mScrollFrameCallback);
+        }
 
         if (mVelocityTracker != null) {
             mVelocityTracker.recycle();
@@ -244,6 +519,108 @@ public class ViewScrollHelper {
     }
 
 
+    /**
+     * 记录手指按下位置下面所有可以滚动的view, 每个手势只遍历一次view树
+     */
+    private void snapshotScrollableChain() {
+        clearScrollableChain();
+        collectScrollableChain(mView, false, mInitMotionX, mInitMotionY);
+        mScrollableChainValid = true;
+    }
+
+    private void collectScrollableChain(@NonNull View v, boolean checkV, float x, float y) {
+        if (v instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) v;
+            final int scrollX = v.getScrollX();
+            final int scrollY = v.getScrollY();
+            final int count = group.getChildCount();
+            // Count backwards - let topmost views consume scroll distance first.
+            for (int i = count - 1; i >= 0; i--) {
+                final View child = group.getChildAt(i);
+                if (x + scrollX >= child.getLeft() && x + scrollX < child.getRight()
+                        && y + scrollY >= child.getTop() && y + scrollY < child.getBottom()) {
+                    collectScrollableChain(child, true, x + scrollX - child.getLeft(), y + scrollY - child.getTop());
+                }
+            }
+        }
+        if (checkV && (v.canScrollHorizontally(1) || v.canScrollHorizontally(-1)
+                || v.canScrollVertically(1) || v.canScrollVertically(-1))) {
+            if (mScrollableChainSize == mScrollableChain.length) {
+                mScrollableChain = Arrays.copyOf(mScrollableChain, mScrollableChainSize * 2);
+            }
+            mScrollableChain[mScrollableChainSize++] = v;
+        }
+    }
+
+    private void clearScrollableChain() {
+        Arrays.fill(mScrollableChain, 0, mScrollableChainSize, null);
+        mScrollableChainSize = 0;
+        mScrollableChainValid = false;
+    }
+
+    /**
+     * layout之后view的位置可能变了, 下次检查时重新记录
+     */
+    public void invalidateScrollableChain() {
+        mScrollableChainValid = false;
+    }
+
+    /**
+     * 代替canScroll, 只询问ACTION_DOWN时记录的可滚动view
+     * @param child 只检查child以及child内部的view
+     */
+    public boolean canScrollUnder(@NonNull View child, int dx, int dy) {
+        return findScrollableUnder(child, dx, dy) != null;
+    }
+
+    /**
+     * @return 手指下面第一个可以朝手指方向(dx, dy)滚动的view
+     */
+    @Nullable
+    public View findScrollableUnder(@NonNull View child, int dx, int dy) {
+        if (!mScrollableChainValid) {
+            snapshotScrollableChain();
+        }
+        for (int i = 0; i < mScrollableChainSize; i++) {
+            final View v = mScrollableChain[i];
+            if (((dx != 0 && v.canScrollHorizontally(-dx)) || (dy != 0 && v.canScrollVertically(-dy)))
+                    && isSelfOrDescendant(child, v)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 停止记录的可滚动view的惯性滚动, 代替遍历整个子树
+     */
+    public void stopScrollableChain() {
+        if (!mScrollableChainValid) {
+            snapshotScrollableChain();
+        }
+        for (int i = 0; i < mScrollableChainSize; i++) {
+            ViewCompat.stopNestedScroll(mScrollableChain[i], ViewCompat.TYPE_NON_TOUCH);
+        }
+    }
+
+    private static boolean isSelfOrDescendant(@NonNull View parent, View v) {
+        while (v != null) {
+            if (v == parent) {
+                return true;
+            }
+            final ViewParent p = v.getParent();
+            v = p instanceof View ? (View) p : null;
+        }
+        return false;
+    }
+
+    private void onDownForScrollableChain(MotionEvent ev) {
+        if (mScrollableChainDownTime != ev.getDownTime() || !mScrollableChainValid) {
+            mScrollableChainDownTime = ev.getDownTime();
+            snapshotScrollableChain();
+        }
+    }
+
     public boolean interceptTouchEvent(@NonNull MotionEvent ev) {
         final int action = ev.getActionMasked();
         if ((action == MotionEvent.ACTION_MOVE) && (mIsDragging)) {
@@ -264,12 +641,15 @@ public class ViewScrollHelper {
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
                 wrongDirectionScrollFirst = false;
-                mInitMotionX = mLastMotionX = (int) ev.getX();
-                mInitMotionY = mLastMotionY = (int) ev.getY();
-                Log.i("RTYJK", "mInitMotionY +" + mInitMotionY) ;
+                mInitMotionX = mLastMotionX = ev.getX();
+                mInitMotionY = mLastMotionY = ev.getY();
+                mInitialEdges = computeInitialEdges(mInitMotionX, mInitMotionY);
                 mActivePointerId = ev.getPointerId(0);
-                mScroller.computeScrollOffset();
-                mIsDragging = !mScroller.isFinished();
+                if (mTrace != null) {
+                    mTrace.onEvent(GestureTrace.EVENT_DOWN, ev.getEventTime(), (int) mInitMotionX, (int) mInitMotionY);
+                }
+                onDownForScrollableChain(ev);
+                mIsDragging = catchSettle(ev);
                 break;
             }
 
@@ -282,32 +662,23 @@ public class ViewScrollHelper {
 
                 final int pointerIndex = ev.findPointerIndex(activePointerId);
                 if (pointerIndex == -1) {
-                    Log.e(TAG, "Invalid pointerId=" + activePointerId + " in onInterceptTouchEvent");
+                    if (mTrace != null) {
+                        mTrace.onEvent(GestureTrace.EVENT_INVALID_POINTER, ev.getEventTime(), activePointerId, 0);
+                    }
                     break;
                 }
 
-                final int x = (int) ev.getX(pointerIndex);
-                final int y = (int) ev.getY(pointerIndex);
-
-                if (!mIsDragging) {
-                    int dx = x - mLastMotionX;
-                    int dy = y - mLastMotionY;
-                    boolean slop = checkTouchSlop(dx, dy);
-                    if (!slop) {
-                        dx = x - mInitMotionX;
-                        dy = y - mInitMotionY;
-                        slop = checkTouchSlop(dx, dy);
-                    }
-                    if (slop && !wrongDirectionScrollFirst) {
-                        View toCapture = findTopChildUnder(mView, x, y);
-                        if (toCapture != null) {
-                            int edge = getEdge(dx, dy);
-                            mIsDragging = mCallback.onDragBegin(toCapture, x, y, dx, dy, edge);
-                        }
+                if (mProcessHistory) {
+                    //逐个检查历史采样点, 在真正越过slop的位置开始拖动
+                    final int historySize = ev.getHistorySize();
+                    for (int h = 0; h < historySize && !mIsDragging; h++) {
+                        interceptMove(ev.getHistoricalEventTime(h),
+                                ev.getHistoricalX(pointerIndex, h), ev.getHistoricalY(pointerIndex, h));
                     }
                 }
-                mLastMotionX = x;
-                mLastMotionY = y;
+                if (!mIsDragging) {
+                    interceptMove(ev.getEventTime(), ev.getX(pointerIndex), ev.getY(pointerIndex));
+                }
                 break;
             }
 
@@ -319,6 +690,7 @@ public class ViewScrollHelper {
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL: {
                 cancel();
+                clearScrollableChain();
                 break;
             }
         }
@@ -326,39 +698,79 @@ public class ViewScrollHelper {
         return mIsDragging;
     }
 
-    private int getEdge(int dx, int dy) {
+    private void interceptMove(long eventTime, float x, float y) {
+        float dx = x - mLastMotionX;
+        float dy = y - mLastMotionY;
+        boolean slop = checkTouchSlop(dx, dy);
+        if (!slop) {
+            dx = x - mInitMotionX;
+            dy = y - mInitMotionY;
+            slop = checkTouchSlop(dx, dy);
+        }
+        if (slop && !wrongDirectionScrollFirst) {
+            tryCapture(eventTime, x, y, dx, dy);
+        }
+        mLastMotionX = x;
+        mLastMotionY = y;
+    }
+
+    //按下的位置在哪些边缘, 只在ACTION_DOWN时计算一次
+    private int computeInitialEdges(float x, float y) {
+        int edges = 0;
+        if (y < mView.getTop() + mEdgeSize) {
+            edges |= EDGE_TOP;
+        }
+        if (y > mView.getBottom() - mEdgeSize) {
+            edges |= EDGE_BOTTOM;
+        }
+        if (x < mView.getLeft() + mEdgeSize) {
+            edges |= EDGE_LEFT;
+        }
+        if (x > mView.getRight() - mEdgeSize) {
+            edges |= EDGE_RIGHT;
+        }
+        return edges;
+    }
+
+    /**
+     * 越过slop时, 从按下的边缘往里滑动才算边缘拖动
+     * @param x 越过slop时的位置, 方向按照相对ACTION_DOWN的位移计算
+     */
+    private int getEdge(float x, float y) {
+        final float dx = x - mInitMotionX;
+        final float dy = y - mInitMotionY;
         int edge = 0;
-        if (mInitMotionX == mLastMotionX && mInitMotionY == mLastMotionY) {
-            if (dy > 0 && mInitMotionY < mView.getTop() + mEdgeSize) {
-                edge |= EDGE_TOP;
-            }
-            if (dy < 0 && mInitMotionY > mView.getBottom() - mEdgeSize) {
-                edge |= EDGE_BOTTOM;
-            }
-            if (dx > 0 && mInitMotionX < mView.getLeft() + mEdgeSize) {
-                edge |= EDGE_LEFT;
-            }
-            if (dx < 0 && mInitMotionX > mView.getRight() - mEdgeSize) {
-                edge |= EDGE_RIGHT;
-            }
+        if (dy > 0) {
+            edge |= mInitialEdges & EDGE_TOP;
         }
-        if (edge != 0) {
-            StringBuilder sb = new StringBuilder();
-            if ((edge & EDGE_TOP) != 0) {
-                sb.append("TOP ");
-            }
-            if ((edge & EDGE_BOTTOM) != 0) {
-                sb.append("BOTTOM ");
-            }
-            if ((edge & EDGE_LEFT) != 0) {
-                sb.append("LEFT ");
+        if (dy < 0) {
+            edge |= mInitialEdges & EDGE_BOTTOM;
+        }
+        if (dx > 0) {
+            edge |= mInitialEdges & EDGE_LEFT;
+        }
+        if (dx < 0) {
+            edge |= mInitialEdges & EDGE_RIGHT;
+        }
+        return edge;
+    }
+
+    private void tryCapture(long eventTime, float x, float y, float dx, float dy) {
+        if (mTrace != null) {
+            mTrace.onEvent(GestureTrace.EVENT_SLOP, eventTime, (int) dx, (int) dy);
+        }
+        View toCapture = findTopChildUnder(mView, x, y);
+        if (toCapture != null) {
+            int edge = getEdge(x, y);
+            if (mTrace != null && edge != 0) {
+                mTrace.onEvent(GestureTrace.EVENT_EDGE, eventTime, edge, 0);
             }
-            if ((edge & EDGE_RIGHT) != 0) {
-                sb.append("RIGHT ");
+            mScrollRemainderX = mScrollRemainderY = 0;
+            mIsDragging = mCallback.onDragBegin(toCapture, (int) x, (int) y, (int) dx, (int) dy, edge);
+            if (mTrace != null) {
+                mTrace.onEvent(GestureTrace.EVENT_CAPTURE, eventTime, mIsDragging ? 1 : 0, edge);
             }
-            Log.i(TAG, "drag edge " + sb);
         }
-        return edge;
     }
 
     public boolean onTouchEvent(MotionEvent ev) {
@@ -375,7 +787,7 @@ public class ViewScrollHelper {
     
         switch (actionMasked) {
             case MotionEvent.ACTION_DOWN: {
-                if ((mIsDragging = !mScroller.isFinished())) {
+                if ((mIsDragging = catchSettle(ev))) {
                     final ViewParent parent = mView.getParent();
                     if (parent != null) {
                         parent.requestDisallowInterceptTouchEvent(true);
@@ -383,57 +795,44 @@ public class ViewScrollHelper {
                 }
 
                 // Remember where the motion event started
-                mInitMotionX = mLastMotionX = (int) ev.getX();
-                mInitMotionY = mLastMotionY = (int) ev.getY();
-                Log.i("RTYJK", "mInitMotionY +" + mInitMotionY) ;
+                mInitMotionX = mLastMotionX = ev.getX();
+                mInitMotionY = mLastMotionY = ev.getY();
+                mInitialEdges = computeInitialEdges(mInitMotionX, mInitMotionY);
+                mScrollRemainderX = mScrollRemainderY = 0;
                 mActivePointerId = ev.getPointerId(0);
+                if (mTrace != null) {
+                    mTrace.onEvent(GestureTrace.EVENT_DOWN, ev.getEventTime(), (int) mInitMotionX, (int) mInitMotionY);
+                }
+                onDownForScrollableChain(ev);
                 break;
             }
             case MotionEvent.ACTION_MOVE:
                 final int activePointerIndex = ev.findPointerIndex(mActivePointerId);
                 if (activePointerIndex == -1) {
-                    Log.e(TAG, "Invalid pointerId=" + mActivePointerId + " in onTouchEvent");
+                    if (mTrace != null) {
+                        mTrace.onEvent(GestureTrace.EVENT_INVALID_POINTER, ev.getEventTime(), mActivePointerId, 0);
+                    }
                     break;
                 }
 
-                final int x = (int) ev.getX(activePointerIndex);
-                final int y = (int) ev.getY(activePointerIndex);
-                int dx = x - mLastMotionX;
-                int dy = y - mLastMotionY;
-                if (!mIsDragging) {
-                    boolean slop = checkTouchSlop(dx, dy);
-                    if (!slop) {
-                        dx = x - mInitMotionX;
-                        dy = y - mInitMotionY;
-                        Log.i("RTYJK", "dy = " + dy);
-                        slop = checkTouchSlop(dx, dy);
-                    }
-                    if (slop) {
-                        View toCapture = findTopChildUnder(mView, x, y);
-                        if (toCapture != null) {
-                            int edge = getEdge(dx, dy);
-                            mIsDragging = mCallback.onDragBegin(toCapture, x, y, dx, dy, edge);
-                        }
-                    }
-                    if (mIsDragging) {
-                        final ViewParent parent = mView.getParent();
-                        if (parent != null) {
-                            parent.requestDisallowInterceptTouchEvent(true);
-                        }
+                if (mProcessHistory) {
+                    //历史采样点也逐个处理, 回调中间位置
+                    final int historySize = ev.getHistorySize();
+                    for (int h = 0; h < historySize; h++) {
+                        touchMove(ev.getHistoricalEventTime(h),
+                                ev.getHistoricalX(activePointerIndex, h), ev.getHistoricalY(activePointerIndex, h));
                     }
                 }
-                mLastMotionX = x;
-                mLastMotionY = y;
-                if (mIsDragging) {
-                    mCallback.onScroll(x, y, dx, dy);
-                }
+                touchMove(ev.getEventTime(), ev.getX(activePointerIndex), ev.getY(activePointerIndex));
                 break;
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
+                flushPendingScroll();
                 if (mIsDragging) {
-                    releaseViewForPointerUp();
+                    releaseViewForPointerUp(ev);
                 }
                 cancel();
+                clearScrollableChain();
                 break;
             case MotionEvent.ACTION_POINTER_UP:
                 onSecondaryPointerUp(ev);
@@ -442,6 +841,40 @@ public class ViewScrollHelper {
         return true;
     }
 
+    private void touchMove(long eventTime, float x, float y) {
+        float dx = x - mLastMotionX;
+        float dy = y - mLastMotionY;
+        if (!mIsDragging) {
+            boolean slop = checkTouchSlop(dx, dy);
+            if (!slop) {
+                dx = x - mInitMotionX;
+                dy = y - mInitMotionY;
+                slop = checkTouchSlop(dx, dy);
+            }
+            if (slop) {
+                tryCapture(eventTime, x, y, dx, dy);
+            }
+            if (mIsDragging) {
+                final ViewParent parent = mView.getParent();
+                if (parent != null) {
+                    parent.requestDisallowInterceptTouchEvent(true);
+                }
+            }
+        }
+        mLastMotionX = x;
+        mLastMotionY = y;
+        if (mIsDragging) {
+            //保留小数部分, 慢速拖动时不会丢失移动距离
+            final float scrollX = dx + mScrollRemainderX;
+            final float scrollY = dy + mScrollRemainderY;
+            final int scrollDx = (int) scrollX;
+            final int scrollDy = (int) scrollY;
+            mScrollRemainderX = scrollX - scrollDx;
+            mScrollRemainderY = scrollY - scrollDy;
+            dispatchScroll((int) x, (int) y, scrollDx, scrollDy);
+        }
+    }
+
     private void onSecondaryPointerUp(MotionEvent ev) {
         final int pointerIndex = (ev.getAction() & MotionEvent.ACTION_POINTER_INDEX_MASK) >>
                 MotionEvent.ACTION_POINTER_INDEX_SHIFT;
@@ -451,9 +884,11 @@ public class ViewScrollHelper {
             // active pointer and adjust accordingly.
             // TODO: Make this decision more intelligent.
             final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
-            mLastMotionX = (int) ev.getX(newPointerIndex);
-            mLastMotionY = (int) ev.getY(newPointerIndex);
+            mLastMotionX = ev.getX(newPointerIndex);
+            mLastMotionY = ev.getY(newPointerIndex);
             mActivePointerId = ev.getPointerId(newPointerIndex);
+            //新的手指不是从边缘按下的
+            mInitialEdges = 0;
             if (mVelocityTracker != null) {
                 mVelocityTracker.clear();
             }
@@ -479,7 +914,7 @@ public class ViewScrollHelper {
     }
 
 
-    private void releaseViewForPointerUp() {
+    private void releaseViewForPointerUp(MotionEvent ev) {
         mIsDragging = false;
         mVelocityTracker.computeCurrentVelocity(1000, mMaxVelocity);
         final float xvel = clampMag(
@@ -488,7 +923,13 @@ public class ViewScrollHelper {
         final float yvel = clampMag(
                 mVelocityTracker.getYVelocity(mActivePointerId),
                 mMinVelocity, mMaxVelocity);
+        if (mTrace != null) {
+            mTrace.onEvent(GestureTrace.EVENT_RELEASE, ev.getEventTime(), (int) xvel, (int) yvel);
+        }
+        mReleaseCaughtVelocity = mCaughtDownTime == ev.getDownTime()
+                ? mCaughtVelocity * (float) Math.exp(-(ev.getEventTime() - mCaughtTime) / CAUGHT_VELOCITY_DECAY) : 0;
         mCallback.onDragEnd((int)xvel, (int)yvel);
+        mReleaseCaughtVelocity = 0;
     }
 
     public boolean isViewUnder(@Nullable View view, int x, int y) {
@@ -502,13 +943,26 @@ public class ViewScrollHelper {
     }
 
 
+    /**
+     * @return child(包括translation)完全在parent的范围之外, 不需要绘制
+     */
+    public static boolean isOutOfParent(ViewGroup parent, View child) {
+        final int tx = Math.round(child.getTranslationX());
+        final int ty = Math.round(child.getTranslationY());
+        return child.getRight() + tx <= 0 || child.getLeft() + tx >= parent.getWidth()
+                || child.getBottom() + ty <= 0 || child.getTop() + ty >= parent.getHeight();
+    }
+
     @Nullable
     public static View findTopChildUnder(ViewGroup parent, int x, int y) {
         final int childCount = parent.getChildCount();
         for (int i = childCount - 1; i >= 0; i--) {
             final View child = parent.getChildAt(i);
-            if (x >= child.getLeft() && x < child.getRight()
-                    && y >= child.getTop() && y < child.getBottom()) {
+            //包括translation, 和touch事件分发的区域一致
+            final int tx = Math.round(child.getTranslationX());
+            final int ty = Math.round(child.getTranslationY());
+            if (x >= child.getLeft() + tx && x < child.getRight() + tx
+                    && y >= child.getTop() + ty && y < child.getBottom() + ty) {
                 return child;
             }
         }